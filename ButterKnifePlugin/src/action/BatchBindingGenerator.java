@@ -0,0 +1,244 @@
+package action;
+
+import entity.Element;
+import entity.LayoutIdEntry;
+import util.BindingRenderer;
+import util.IncludeResolver;
+import util.LayoutVariants;
+import util.StaxLayoutScanner;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 不依赖 IDE 的批量生成入口，用于在 CI 中为整个 Android 源码树生成控件注入代码：
+ * 扫描所有 res/layout* 目录，用 StAX 流式解析布局，按与插件相同的方式展开 include 并
+ * 合并限定符变体，在 fork-join 线程池中并行处理，输出与 ViewFieldMethodCreator 相同的
+ * 字段和 @OnClick 方法代码
+ * <p>
+ * 用法：BatchBindingGenerator [-c] &lt;源码根目录&gt; [输出目录] [并行度]
+ * <p>
+ * -c 为每个 id 同时生成 @OnClick 方法；不指定输出目录时代码打印到标准输出
+ */
+public class BatchBindingGenerator {
+
+    private final int mParallelism;
+    private final boolean mCreateClickMethod;
+    private final IncludeResolver mResolver = new IncludeResolver();
+
+    /**
+     * 布局名到各限定符变体文件的映射，变体按目录名排序，默认的 layout 目录在最前面
+     */
+    private final Map<String, List<Path>> mLayouts = new TreeMap<>();
+    private final Map<Path, List<LayoutIdEntry>> mEntries = new ConcurrentHashMap<>();
+    private final AtomicInteger mIdCount = new AtomicInteger();
+    /**
+     * 计入 mIdCount 但没有生成代码的 ViewStub 数量，见 render()
+     */
+    private final AtomicInteger mSkippedStubCount = new AtomicInteger();
+
+    public BatchBindingGenerator(int parallelism, boolean createClickMethod) {
+        mParallelism = parallelism;
+        mCreateClickMethod = createClickMethod;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> params = new ArrayList<>();
+        boolean createClickMethod = false;
+        for (String arg : args) {
+            if ("-c".equals(arg)) {
+                createClickMethod = true;
+            } else {
+                params.add(arg);
+            }
+        }
+        if (params.isEmpty()) {
+            System.err.println("用法：BatchBindingGenerator [-c] <源码根目录> [输出目录] [并行度]");
+            System.exit(1);
+            return;
+        }
+
+        Path root = Paths.get(params.get(0));
+        Path outDir = params.size() > 1 ? Paths.get(params.get(1)) : null;
+        int parallelism = params.size() > 2 ? Integer.parseInt(params.get(2)) : Runtime.getRuntime().availableProcessors();
+
+        BatchBindingGenerator generator = new BatchBindingGenerator(parallelism, createClickMethod);
+        long start = System.nanoTime();
+        Map<String, String> code = generator.generate(root);
+        long elapsed = System.nanoTime() - start;
+
+        if (outDir != null) {
+            Files.createDirectories(outDir);
+            for (Map.Entry<String, String> entry : code.entrySet()) {
+                Files.write(outDir.resolve(entry.getKey() + ".txt"), entry.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+        } else {
+            for (Map.Entry<String, String> entry : code.entrySet()) {
+                System.out.println("// " + entry.getKey());
+                System.out.println(entry.getValue());
+            }
+        }
+
+        double seconds = elapsed / 1e9;
+        System.err.println(String.format("%d 个布局（%d 个文件，%d 个 id，其中跳过 %d 个 ViewStub），耗时 %.1f ms，%.0f 布局/秒，并行度 %d",
+                code.size(), generator.mEntries.size(), generator.mIdCount.get(), generator.mSkippedStubCount.get(),
+                elapsed / 1e6, code.size() / seconds, parallelism));
+    }
+
+    /**
+     * 扫描 root 下的所有布局并生成代码，返回布局名到生成代码的映射
+     */
+    public Map<String, String> generate(Path root) throws Exception {
+        List<Path> files = findLayoutFiles(root);
+        for (Path file : files) {
+            mLayouts.computeIfAbsent(getLayoutName(file), name -> new ArrayList<>()).add(file);
+        }
+        for (List<Path> variants : mLayouts.values()) {
+            variants.sort((a, b) -> getQualifier(a).compareTo(getQualifier(b)));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(mParallelism);
+        try {
+            // 1. 并行解析所有布局文件自身的条目
+            pool.submit(() -> files.parallelStream().forEach(file -> {
+                try {
+                    mEntries.put(file, StaxLayoutScanner.scan(file));
+                } catch (Exception e) {
+                    System.err.println("解析失败：" + file + "，" + e.getMessage());
+                    mEntries.put(file, Collections.emptyList());
+                }
+            })).get();
+
+            // 2. 并行展开 include、合并变体并生成代码
+            IncludeResolver.LayoutSource source = new BatchLayoutSource();
+            Map<String, String> code = new ConcurrentHashMap<>();
+            pool.submit(() -> mLayouts.keySet().parallelStream().forEach(name -> {
+                List<Element> elements = getElements(name, source);
+                mIdCount.addAndGet(elements.size());
+                code.put(name, render(elements));
+            })).get();
+            return new TreeMap<>(code);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private List<Element> getElements(String layoutName, IncludeResolver.LayoutSource source) {
+        List<Path> variants = mLayouts.get(layoutName);
+        List<String> qualifiers = new ArrayList<>(variants.size());
+        List<List<LayoutIdEntry>> variantIds = new ArrayList<>(variants.size());
+        for (Path variant : variants) {
+            qualifiers.add(getQualifier(variant));
+            variantIds.add(mResolver.expand(layoutName, mEntries.get(variant), source));
+        }
+        List<Element> elements = LayoutVariants.merge(qualifiers, variantIds);
+        for (Element element : elements) {
+            element.setCreateClickMethod(mCreateClickMethod);
+        }
+        return elements;
+    }
+
+    /**
+     * ViewStub 需要在类中生成 inflate 访问方法并在绑定后保存根布局，和 ViewFieldMethodCreator 一样
+     * 不生成 &#64;BindView 字段和点击方法；批量输出的只是独立的代码片段，所以这里直接跳过
+     */
+    private String render(List<Element> elements) {
+        StringBuilder sb = new StringBuilder();
+        for (Element element : elements) {
+            if (element.isStub()) {
+                mSkippedStubCount.incrementAndGet();
+            } else if (element.isCreateField()) {
+                sb.append(BindingRenderer.renderField(element)).append("\n\n");
+            }
+        }
+        for (Element element : elements) {
+            if (element.isCreateClickMethod() && !element.isStub()) {
+                String methodName = BindingRenderer.getClickMethodName(element) + "Click";
+                sb.append(BindingRenderer.renderClickMethod(element, methodName)).append("\n\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 解析结果已经全部在内存中且不会再变化，修改戳固定为 0
+     */
+    private class BatchLayoutSource implements IncludeResolver.LayoutSource {
+        @Override
+        public List<LayoutIdEntry> getEntries(String layoutName) {
+            List<Path> variants = mLayouts.get(layoutName);
+            if (variants == null) {
+                return null;
+            }
+            if (variants.size() == 1) {
+                return mEntries.get(variants.get(0));
+            }
+
+            // 多个变体时合并条目，同一个 id 只保留一次
+            List<LayoutIdEntry> entries = new ArrayList<>();
+            Set<LayoutIdEntry> seen = new HashSet<>();
+            for (Path variant : variants) {
+                for (LayoutIdEntry entry : mEntries.get(variant)) {
+                    if (seen.add(entry)) {
+                        entries.add(entry);
+                    }
+                }
+            }
+            return entries;
+        }
+
+        @Override
+        public long getModificationStamp(String layoutName) {
+            return mLayouts.containsKey(layoutName) ? 0 : -1;
+        }
+
+        @Override
+        public Object getScopeKey() {
+            return BatchBindingGenerator.this;
+        }
+    }
+
+    private static List<Path> findLayoutFiles(Path root) throws IOException {
+        try (Stream<Path> stream = Files.walk(root)) {
+            return stream.filter(path -> {
+                Path parent = path.getParent();
+                Path res = parent == null ? null : parent.getParent();
+                // 相对路径（如 Foo.xml）没有父目录，根目录的 getFileName() 也是 null，先判空再取目录名
+                if (res == null || parent.getFileName() == null || res.getFileName() == null) {
+                    return false;
+                }
+                return path.toString().endsWith(".xml")
+                        && parent.getFileName().toString().startsWith("layout")
+                        && "res".equals(res.getFileName().toString())
+                        && Files.isRegularFile(path);
+            }).collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static String getLayoutName(Path file) {
+        String fileName = file.getFileName().toString();
+        return fileName.substring(0, fileName.length() - ".xml".length());
+    }
+
+    private static String getQualifier(Path file) {
+        return file.getParent().getFileName().toString();
+    }
+}
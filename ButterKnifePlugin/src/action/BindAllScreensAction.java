@@ -0,0 +1,233 @@
+package action;
+
+import com.intellij.concurrency.JobLauncher;
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.LangDataKeys;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.SmartPointerManager;
+import com.intellij.psi.SmartPsiElementPointer;
+import com.intellij.psi.search.FileTypeIndex;
+import com.intellij.psi.search.GlobalSearchScope;
+import entity.Element;
+import org.jetbrains.annotations.NotNull;
+import util.Utils;
+import view.ViewFieldMethodCreator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一次为 module 中所有引用了 R.layout.xxx 的 Activity、Fragment、Adapter（包括嵌套类）生成控件注入代码，
+ * RecyclerView.Adapter 生成列表项的 ViewHolder 内部类。各个类的 Element 集合在后台读操作中并行计算，
+ * 最后每 BATCH_SIZE 个类一个写命令分批插入代码，批次之间释放写锁让界面响应。所有批次使用同一个
+ * 撤销分组，整个过程仍然只产生一个撤销步骤
+ */
+public class BindAllScreensAction extends AnAction {
+
+    private static final String COMMAND_NAME = "Bind All Screens";
+
+    /**
+     * 每个写命令处理的类的个数
+     */
+    private static final int BATCH_SIZE = 20;
+
+    /**
+     * 一个待生成代码的类，以及它引用的所有布局合并后的 Element 集合
+     */
+    private static class ScreenBinding {
+        final SmartPsiElementPointer<PsiClass> classPointer;
+        final List<Element> elements;
+        final String layoutName;
+        /**
+         * 是否为 Adapter 生成 ViewHolder 内部类
+         */
+        final boolean viewHolder;
+
+        ScreenBinding(SmartPsiElementPointer<PsiClass> classPointer, List<Element> elements, String layoutName,
+                      boolean viewHolder) {
+            this.classPointer = classPointer;
+            this.elements = elements;
+            this.layoutName = layoutName;
+            this.viewHolder = viewHolder;
+        }
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        e.getPresentation().setEnabledAndVisible(e.getProject() != null && e.getData(LangDataKeys.MODULE) != null);
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        Module module = e.getData(LangDataKeys.MODULE);
+        if (project == null || module == null) {
+            return;
+        }
+
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "绑定 " + module.getName() + " 中的所有界面", true) {
+
+            private final List<ScreenBinding> bindings = Collections.synchronizedList(new ArrayList<>());
+
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                indicator.setText("查找 " + module.getName() + " 中的 Java 文件");
+                Collection<VirtualFile> files = DumbService.getInstance(project).runReadActionInSmartMode(() ->
+                        FileTypeIndex.getFiles(JavaFileType.INSTANCE, GlobalSearchScope.moduleScope(module)));
+
+                indicator.setIndeterminate(false);
+                indicator.setText("解析界面使用的布局");
+                AtomicInteger processed = new AtomicInteger();
+                JobLauncher.getInstance().invokeConcurrentlyUnderProgress(new ArrayList<>(files), indicator, file -> {
+                    DumbService.getInstance(project).runReadActionInSmartMode(() -> collectBindings(project, file, bindings));
+                    indicator.setFraction((double) processed.incrementAndGet() / files.size());
+                    return true;
+                });
+            }
+
+            @Override
+            public void onSuccess() {
+                applyBindings(project, bindings);
+            }
+        });
+    }
+
+    /**
+     * 找出 file 中引用了布局的界面类，计算需要新生成的 Element。需要在读操作中调用
+     */
+    private static void collectBindings(Project project, VirtualFile file, List<ScreenBinding> bindings) {
+        PsiFile psiFile = PsiManager.getInstance(project).findFile(file);
+        if (!(psiFile instanceof PsiJavaFile)) {
+            return;
+        }
+
+        List<PsiClass> classes = new ArrayList<>();
+        collectClasses(((PsiJavaFile) psiFile).getClasses(), classes);
+        for (PsiClass psiClass : classes) {
+            if (!Utils.isScreenClass(psiClass)) {
+                continue;
+            }
+            Map<String, List<PsiFile>> layouts = Utils.findLayoutReferences(psiClass);
+            if (layouts.isEmpty()) {
+                continue;
+            }
+            List<String> layoutNames = new ArrayList<>(layouts.keySet());
+
+            // 一个类引用多个布局时按 id 合并
+            List<Element> merged = ButterKnifePlugin.findElements(project, psiFile, layoutNames, layouts);
+            if (merged == null) {
+                continue;
+            }
+
+            // 已经绑定过的 id 不再生成
+            Set<String> boundFields = Utils.findBoundIds(psiClass).get(Utils.BIND_VIEW);
+            boolean viewHolder = Utils.getViewHolderSuperClass(psiClass) != null;
+            if (viewHolder && !boundFields.isEmpty()) {
+                // Adapter 中已经有绑定过控件的 ViewHolder，再生成一个只含新 id 的 ViewHolder 没有意义
+                continue;
+            }
+            boolean hasNewField = false;
+            for (Element element : merged) {
+                boolean exist = boundFields.contains(element.getId());
+                element.setCreateField(!exist);
+                hasNewField |= !exist;
+            }
+            if (hasNewField) {
+                bindings.add(new ScreenBinding(SmartPointerManager.createPointer(psiClass),
+                        merged, layoutNames.get(0), viewHolder));
+            }
+        }
+    }
+
+    /**
+     * 收集 classes 及其中所有的嵌套类，匿名类和局部类不算
+     */
+    private static void collectClasses(PsiClass[] classes, List<PsiClass> result) {
+        for (PsiClass psiClass : classes) {
+            result.add(psiClass);
+            collectClasses(psiClass.getInnerClasses(), result);
+        }
+    }
+
+    /**
+     * 每 BATCH_SIZE 个类一个写命令生成代码，所有写命令使用同一个撤销分组
+     */
+    private static void applyBindings(Project project, List<ScreenBinding> bindings) {
+        if (bindings.isEmpty()) {
+            Messages.showInfoMessage(project, "没有找到需要生成代码的界面", COMMAND_NAME);
+            return;
+        }
+        applyBatch(project, bindings, 0, new Object(), new AtomicInteger());
+    }
+
+    /**
+     * 为 bindings 中从 start 开始的一批类生成代码。批次结束前解除文档的阻塞并提交，
+     * 然后在下一次 EDT 事件中处理下一批，期间写锁被释放
+     */
+    private static void applyBatch(Project project, List<ScreenBinding> bindings, int start, Object groupId,
+                                   AtomicInteger generated) {
+        List<ScreenBinding> batch = bindings.subList(start, Math.min(start + BATCH_SIZE, bindings.size()));
+        List<PsiFile> files = new ArrayList<>();
+        for (ScreenBinding binding : batch) {
+            PsiFile file = binding.classPointer.getContainingFile();
+            if (file != null && !files.contains(file)) {
+                files.add(file);
+            }
+        }
+
+        WriteCommandAction.writeCommandAction(project, files.toArray(PsiFile.EMPTY_ARRAY))
+                .withName(COMMAND_NAME)
+                .withGroupId(groupId)
+                .run(() -> {
+                    for (ScreenBinding binding : batch) {
+                        PsiClass psiClass = binding.classPointer.getElement();
+                        if (psiClass == null) continue;
+
+                        ViewFieldMethodCreator creator = new ViewFieldMethodCreator(null, psiClass.getContainingFile(),
+                                psiClass, COMMAND_NAME, binding.elements, Collections.singletonList(binding.layoutName));
+                        creator.setViewHolderMode(binding.viewHolder);
+                        creator.generate();
+                        generated.incrementAndGet();
+                    }
+
+                    PsiDocumentManager documentManager = PsiDocumentManager.getInstance(project);
+                    for (PsiFile file : files) {
+                        Document document = documentManager.getDocument(file);
+                        if (document != null) {
+                            documentManager.doPostponedOperationsAndUnblockDocument(document);
+                            documentManager.commitDocument(document);
+                        }
+                    }
+                });
+
+        int next = start + batch.size();
+        if (next < bindings.size()) {
+            ApplicationManager.getApplication().invokeLater(
+                    () -> applyBatch(project, bindings, next, groupId, generated), project.getDisposed());
+        } else {
+            Messages.showInfoMessage(project, "已为 " + generated.get() + " 个界面生成控件注入代码", COMMAND_NAME);
+        }
+    }
+}
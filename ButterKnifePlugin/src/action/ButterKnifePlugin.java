@@ -3,31 +3,47 @@ package action;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.PlatformDataKeys;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.editor.CaretModel;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.SelectionModel;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiFile;
-import com.intellij.psi.search.FilenameIndex;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.util.PsiUtilBase;
-import com.intellij.psi.xml.XmlFile;
+import entity.BindingSession;
 import entity.Element;
+import latency.LatencyRecorder;
 import org.apache.http.util.TextUtils;
+import org.jetbrains.annotations.NotNull;
+import util.LayoutLocator;
 import util.Utils;
 import view.FindViewByIdDialog;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * IDE 中所有项目窗口共用同一个 action 实例，所以这里不保存任何状态：每次执行的布局名、
+ * 目标类和解析出的 Element 都放在局部变量和各自的 BindingSession 中
+ */
 public class ButterKnifePlugin extends AnAction {
 
-    private FindViewByIdDialog dialog;
-    private String xmlFileName;
+    public static final String PHASE_LAYOUT_NAME = "layout name detection";
+    public static final String PHASE_INDEX_LOOKUP = "filename index lookup";
+    public static final String PHASE_DIALOG_BUILD = "dialog build";
 
     @Override
     public void actionPerformed(AnActionEvent e) {
@@ -38,50 +54,178 @@ public class ButterKnifePlugin extends AnAction {
             return;
         }
 
-        // 获取用户选择的字符（用户应该选择 xml 文件名）
+        // 获取 editor 所在文件的 PsiFile 对象
+        PsiFile psiFile = PsiUtilBase.getPsiFileInEditor(editor, project);
+        if (psiFile == null) {
+            return;
+        }
+        // 记下光标位置，后台解析时不再访问 editor
+        int caretOffset = editor.getCaretModel().getOffset();
+
+        // 获取用户选择的字符（用户应该选择 xml 文件名）。EDT 上只读取选区和光标所在行的文本，
+        // 遍历目标类查找 R.layout.xxx 放到后台的读操作中进行
         SelectionModel model = editor.getSelectionModel();
-        xmlFileName = model.getSelectedText();
-
-        // 如果用户没有选择任何内容，则先检查光标所在的那一行代码是否有布局文件名字
-        if (TextUtils.isEmpty(xmlFileName)) {
-            // 获取光标所在位置那一行中的布局文件名
-            xmlFileName = getCurrentLayout(editor);
-            if (TextUtils.isEmpty(xmlFileName)) {
-                // 如果还没有就弹对话框让用户自己输入
-                xmlFileName = Messages.showInputDialog(project, "输入layout名称", "未输入", Messages.getInformationIcon());
-                if (TextUtils.isEmpty(xmlFileName)) {
-                    Utils.showPopupBalloon(editor, "用户没有输入layout", 5);
+        List<String> layoutNames = new ArrayList<>();
+        String currentLayout = null;
+        if (!TextUtils.isEmpty(model.getSelectedText())) {
+            layoutNames.add(model.getSelectedText());
+        } else {
+            currentLayout = getCurrentLayout(editor);
+        }
+        parseLayouts(project, editor, psiFile, caretOffset, layoutNames, currentLayout);
+    }
+
+    /**
+     * 查找布局文件、解析 id 和创建会话都放到后台的 non-blocking 读操作中进行，可以被写操作打断和
+     * 用户取消，多个项目窗口可以同时解析。只有输入框和最终的对话框在 EDT 上显示。
+     * layoutNames 为空时先在目标类中查找用到的布局，找不到再使用光标所在行的 currentLayout，
+     * 都没有时弹框让用户输入
+     */
+    private static void parseLayouts(Project project, Editor editor, PsiFile psiFile, int caretOffset,
+                                     List<String> layoutNames, String currentLayout) {
+        String title = layoutNames.isEmpty() ? "解析布局" : "解析布局 " + String.join(", ", layoutNames);
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, title, true) {
+
+            private List<String> resolvedNames = layoutNames;
+            /**
+             * 从类中识别布局名时，R.layout 引用直接解析到的布局文件
+             */
+            private Map<String, List<PsiFile>> resolvedLayouts = Collections.emptyMap();
+            private BindingSession session;
+
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                indicator.setIndeterminate(true);
+                if (resolvedNames.isEmpty()) {
+                    indicator.setText("正在查找用到的布局");
+                    resolvedLayouts = ReadAction.nonBlocking(() -> findLayoutNames(psiFile, caretOffset, currentLayout))
+                            .withDocumentsCommitted(project)
+                            .expireWith(project)
+                            .executeSynchronously();
+                    resolvedNames = new ArrayList<>(resolvedLayouts.keySet());
+                    if (resolvedNames.isEmpty()) {
+                        return;
+                    }
+                }
+                List<String> names = resolvedNames;
+                Map<String, List<PsiFile>> layouts = resolvedLayouts;
+                indicator.setText("正在解析 " + String.join(", ", names) + ".xml");
+                session = ReadAction.nonBlocking(() -> createSession(project, psiFile, caretOffset, names, layouts))
+                        .withDocumentsCommitted(project)
+                        .expireWith(project)
+                        .executeSynchronously();
+            }
+
+            @Override
+            public void onSuccess() {
+                if (resolvedNames.isEmpty()) {
+                    // 如果还没有就弹对话框让用户自己输入
+                    String input = Messages.showInputDialog(project, "输入layout名称", "未输入", Messages.getInformationIcon());
+                    if (TextUtils.isEmpty(input)) {
+                        Utils.showPopupBalloon(editor, "用户没有输入layout", 5);
+                        return;
+                    }
+                    parseLayouts(project, editor, psiFile, caretOffset, Collections.singletonList(input), null);
+                    return;
+                }
+                if (session == null) {
+                    Utils.showPopupBalloon(editor, "未找到选中的布局文件" + String.join(", ", resolvedNames), 5);
+                    return;
+                }
+                if (session.getElements().isEmpty() || session.getFile() == null) {
+                    session.release();
                     return;
                 }
+
+                // 生成选择对话框，并根据用户的选择生成代码。对话框只通过会话访问 PSI，关闭时释放会话
+                long start = System.nanoTime();
+                new FindViewByIdDialog(session).showDialog();
+                LatencyRecorder.getInstance().record(PHASE_DIALOG_BUILD, start);
             }
+        });
+    }
+
+    /**
+     * 用户没有选择任何内容时，找出光标所在目标类中用到的所有 R.layout.xxx 及其直接解析到的布局文件，
+     * 不在类中或者类中没有用到布局时使用光标所在行的 currentLayout。需要在读操作中调用
+     */
+    static Map<String, List<PsiFile>> findLayoutNames(PsiFile psiFile, int caretOffset, String currentLayout) {
+        long start = System.nanoTime();
+        Map<String, List<PsiFile>> layouts = new LinkedHashMap<>();
+        PsiClass targetClass = Utils.getTargetClass(psiFile, caretOffset);
+        if (targetClass != null) {
+            layouts.putAll(Utils.findLayoutReferences(targetClass));
+        }
+        if (layouts.isEmpty() && !TextUtils.isEmpty(currentLayout)) {
+            layouts.put(currentLayout, Collections.emptyList());
         }
+        // 只统计自动识别的耗时，不包括等待用户输入
+        LatencyRecorder.getInstance().record(PHASE_LAYOUT_NAME, start);
+        return layouts;
+    }
 
-        // 找到 xmlFileName 对应的 xml 文件，获取所有 id 并保存到 elements 集合中
-        PsiFile[] psiFiles = FilenameIndex.getFilesByName(project, xmlFileName + ".xml", GlobalSearchScope.allScope(project));
-        if (psiFiles.length == 0) {
-            Utils.showPopupBalloon(editor, "未找到选中的布局文件" + xmlFileName, 5);
-            return;
+    /**
+     * 解析 layoutNames 对应的布局并按光标位置查找目标类，收集类中已经绑定的 id，创建本次执行的会话。
+     * resolvedLayouts 中有 R.layout 引用直接解析到的文件时不再查索引。
+     * 没有找到布局文件时返回 null。需要在读操作中调用
+     */
+    static BindingSession createSession(Project project, PsiFile psiFile, int caretOffset, List<String> layoutNames,
+                                        Map<String, List<PsiFile>> resolvedLayouts) {
+        List<Element> elements = findElements(project, psiFile, layoutNames, resolvedLayouts);
+        if (elements == null) {
+            return null;
         }
+        PsiClass targetClass = Utils.getTargetClass(psiFile, caretOffset);
+        Map<String, Set<String>> boundIds = targetClass != null ? Utils.findBoundIds(targetClass) : Collections.emptyMap();
+        return new BindingSession(project, psiFile, targetClass, layoutNames, elements, boundIds);
+    }
+
+    /**
+     * 在 contextFile 所在 module 及其依赖中找到 layoutName 对应的所有布局变体，合并所有 id
+     * 并保存到 elements 集合中，没有找到布局文件时返回 null。需要在读操作中调用
+     */
+    static List<Element> findElements(Project project, PsiFile contextFile, String layoutName) {
+        return findElements(project, contextFile, Collections.singletonList(layoutName), Collections.emptyMap());
+    }
 
-        XmlFile xmlFile = (XmlFile) psiFiles[0];
+    /**
+     * 同上，一个类用到多个布局时按 id 合并各个布局的 Element，同一个 id 只保留第一次出现的。
+     * 每个布局的限定符变体单独合并，不会因为另一个布局没有 layout-land 变体而标记缺失。
+     * resolvedLayouts 中有 R.layout 引用直接解析到的文件时取它们所在 res 目录下的变体，
+     * 否则按布局名查索引。所有布局都没有找到时返回 null
+     */
+    static List<Element> findElements(Project project, PsiFile contextFile, List<String> layoutNames,
+                                      Map<String, List<PsiFile>> resolvedLayouts) {
+        GlobalSearchScope scope = LayoutLocator.getLayoutScope(project, contextFile);
         List<Element> elements = new ArrayList<>();
-        Utils.getIDsFromLayout(xmlFile, elements);
-
-        // 生成选择对话框，并根据用户的选择生成代码
-        if (elements.size() != 0) {
-            // 获取 editor 所在文件的 PsiFile 对象
-            PsiFile psiFile = PsiUtilBase.getPsiFileInEditor(editor, project);
-            PsiClass psiClass = Utils.getTargetClass(editor, psiFile);
-            // 生成 UI
-            dialog = new FindViewByIdDialog(editor, project, psiFile, psiClass, elements, xmlFileName);
-            dialog.showDialog();
+        Set<String> ids = new HashSet<>();
+        boolean found = false;
+        for (String layoutName : layoutNames) {
+            long start = System.nanoTime();
+            List<PsiFile> variants = LayoutLocator.findLayoutVariants(project,
+                    resolvedLayouts.getOrDefault(layoutName, Collections.emptyList()));
+            if (variants.isEmpty()) {
+                variants = LayoutLocator.findLayoutFiles(project, layoutName, scope);
+            }
+            LatencyRecorder.getInstance().record(PHASE_INDEX_LOOKUP, start);
+            if (variants.isEmpty()) {
+                continue;
+            }
+
+            found = true;
+            for (Element element : Utils.getIDsFromLayouts(variants, scope, new ArrayList<>())) {
+                if (ids.add(element.getId())) {
+                    elements.add(element);
+                }
+            }
         }
+        return found ? elements : null;
     }
 
     /**
      * 检查光标所在的那一行是否有 layout 文件名，有则返回
      */
-    private String getCurrentLayout(Editor editor) {
+    private static String getCurrentLayout(Editor editor) {
         Document document = editor.getDocument();
         // 获取光标对象并得到其位置（相对于左上角编辑区起始点的偏移量）
         CaretModel caretModel = editor.getCaretModel();
@@ -94,12 +238,17 @@ public class ButterKnifePlugin extends AnAction {
         String lineContent = document.getText(new TextRange(lineStartOffset, lineEndOffset));
         String layoutMatcher = "R.layout.";
 
-        System.out.println("lineContent:" + lineContent + ",contain:" + lineContent.contains(layoutMatcher));
         if (!TextUtils.isEmpty(lineContent) && lineContent.contains(layoutMatcher)) {
-            // 获取 layout 文件名的字符串
+            // 获取 layout 文件名的字符串，名字在第一个不是标识符的字符处结束，如 ")"、","、";" 或行尾
             int startPosition = lineContent.indexOf(layoutMatcher) + layoutMatcher.length();
-            int endPosition = lineContent.indexOf(")", startPosition);
-            return lineContent.substring(startPosition, endPosition);
+            int endPosition = startPosition;
+            while (endPosition < lineContent.length()
+                    && Character.isJavaIdentifierPart(lineContent.charAt(endPosition))) {
+                endPosition++;
+            }
+            if (endPosition > startPosition) {
+                return lineContent.substring(startPosition, endPosition);
+            }
         }
         return null;
     }
@@ -0,0 +1,121 @@
+package entity;
+
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.SmartPointerManager;
+import com.intellij.psi.SmartPsiElementPointer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 一次执行 ButterKnifePlugin 的上下文：目标文件、目标类、布局名、解析出的 Element 以及类中已经绑定的 id。
+ * 在后台读操作中一次性创建，之后不再修改，多个项目窗口同时执行时各自使用自己的会话，
+ * 互不影响。文件和类只保存 SmartPsiElementPointer，用到时再取出，编辑器也只在用到时查找，
+ * 对话框关闭时调用 release 释放，不会让 PSI 和编辑器一直留在内存中
+ */
+public class BindingSession {
+
+    private final Project project;
+    private final SmartPsiElementPointer<PsiFile> filePointer;
+    private final SmartPsiElementPointer<PsiClass> classPointer;
+    private final List<String> layoutNames;
+    /**
+     * 解析出的 Element，集合本身不可修改，对话框中的勾选、改名只修改其中的 Element
+     */
+    private final List<Element> elements;
+    /**
+     * 创建会话时类中已经绑定的 id，键为 Utils.BIND_VIEW 和 Utils.ON_CLICK
+     */
+    private final Map<String, Set<String>> boundIds;
+    /**
+     * 只在对话框关闭时由 EDT 修改一次
+     */
+    private volatile boolean released;
+
+    /**
+     * 需要在读操作中调用
+     */
+    public BindingSession(Project project, PsiFile file, PsiClass targetClass, List<String> layoutNames, List<Element> elements,
+                          Map<String, Set<String>> boundIds) {
+        SmartPointerManager pointerManager = SmartPointerManager.getInstance(project);
+        this.project = project;
+        this.filePointer = pointerManager.createSmartPsiElementPointer(file);
+        this.classPointer = targetClass == null ? null : pointerManager.createSmartPsiElementPointer(targetClass);
+        this.layoutNames = Collections.unmodifiableList(new ArrayList<>(layoutNames));
+        this.elements = Collections.unmodifiableList(new ArrayList<>(elements));
+        this.boundIds = Collections.unmodifiableMap(new HashMap<>(boundIds));
+    }
+
+    public Project getProject() {
+        return project;
+    }
+
+    /**
+     * 文件已经被删除或者会话已经释放时返回 null
+     */
+    public PsiFile getFile() {
+        return released ? null : filePointer.getElement();
+    }
+
+    /**
+     * 光标不在类中、类已经被删除或者会话已经释放时返回 null
+     */
+    public PsiClass getTargetClass() {
+        return released || classPointer == null ? null : classPointer.getElement();
+    }
+
+    public List<String> getLayoutNames() {
+        return layoutNames;
+    }
+
+    public List<Element> getElements() {
+        return elements;
+    }
+
+    /**
+     * 返回创建会话时类中已经用 kind（Utils.BIND_VIEW 或 Utils.ON_CLICK）绑定的 id，没有目标类时为空
+     */
+    public Set<String> getBoundIds(String kind) {
+        return boundIds.getOrDefault(kind, Collections.emptySet());
+    }
+
+    /**
+     * 返回当前正在编辑目标文件的编辑器，文件已经不在当前编辑器中时返回 null
+     */
+    public Editor getEditor() {
+        PsiFile file = getFile();
+        Editor editor = file == null ? null : FileEditorManager.getInstance(project).getSelectedTextEditor();
+        if (editor == null || PsiDocumentManager.getInstance(project).getPsiFile(editor.getDocument()) != file) {
+            return null;
+        }
+        return editor;
+    }
+
+    public boolean isReleased() {
+        return released;
+    }
+
+    /**
+     * 释放指针，之后 getFile、getTargetClass 都返回 null。可以重复调用
+     */
+    public void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        SmartPointerManager pointerManager = SmartPointerManager.getInstance(project);
+        pointerManager.removePointer(filePointer);
+        if (classPointer != null) {
+            pointerManager.removePointer(classPointer);
+        }
+    }
+}
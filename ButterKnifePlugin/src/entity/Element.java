@@ -1,24 +1,38 @@
 package entity;
 
-import com.intellij.psi.xml.XmlTag;
-import util.Utils;
+import util.NameUtils;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
+/**
+ * 布局中一个带 id 的控件，只保存从布局中提取出的文本数据和用户在对话框中的选择，
+ * 不持有 XmlTag 等 PSI 对象，对话框关闭后不会让布局文件的 PSI 一直留在内存中
+ */
 public class Element {
 
     /**
-     * 从 layout 文件中截取 id 的正则表达式，如从 android:id="@+id/text1" 中
-     * 截取出的是 @+id/text1 这部分
+     * fieldName 的三种命名方式：aa_bb_cc
      */
-    private static final Pattern idPattern = Pattern.compile("@\\+?(android:)?id/([^$]+)$", Pattern.CASE_INSENSITIVE);
+    public static final int NAME_STYLE_ORIGINAL = 1;
+    /**
+     * aaBbCc
+     */
+    public static final int NAME_STYLE_CAMEL = 2;
+    /**
+     * mAaBbCc
+     */
+    public static final int NAME_STYLE_MEMBER = 3;
 
     /**
      * fieldName 的命名有三种方式，分别对应 fieldNameType 的值为 1/2/3
      * 1:aa_bb_cc; 2:aaBbCc; 3:mAaBbCc
      */
-    private int fieldNameTypes = 3;
+    private int fieldNameTypes = NAME_STYLE_MEMBER;
 
     /**
      * layout 文件中组件的 id 字符串，如对于 android:id="@+id/text1" 而言，
@@ -32,11 +46,22 @@ public class Element {
     private String fieldTypeName;
 
     /**
-     * Java 文件中字段的名称
+     * Java 文件中字段的名称，用户在插件 UI 中修改过时不为 null
      */
     private String fieldName;
 
-    private XmlTag xmlTag;
+    /**
+     * 根据 id 生成的 aaBbCc、mAaBbCc 风格的名称，第一次使用时生成并缓存
+     */
+    private String camelFieldName;
+    private String memberFieldName;
+    private String fullIdString;
+
+    /**
+     * 同一个布局有多个限定符变体（layout、layout-land 等）时，没有声明该 id 的变体目录名，
+     * 为空表示所有变体中都有该 id
+     */
+    private List<String> missingVariants = Collections.emptyList();
 
     /**
      * 表示是否声明当前字段为成员，并且加上 @BindView 注解，形如：
@@ -56,33 +81,57 @@ public class Element {
      */
     private boolean createClickMethod = false;
 
+    /**
+     * 表示是否延迟查找该控件：不在绑定时查找，而是生成一个第一次调用时才查找并缓存的访问方法，
+     * 适合只在错误页、空页面等状态下才用到的控件。只在生成字段时有效，默认不延迟
+     */
+    private boolean lazy = false;
+
+    /**
+     * ViewStub 引用的布局名，不是 ViewStub 时为 null；inflatedId 为 android:inflatedId 中的 id，
+     * 没有声明时为 null
+     */
+    private String stubLayout;
+    private String inflatedId;
+
+    /**
+     * ViewStub 布局中的控件，第一次用到时才解析，见 getStubChildren
+     */
+    private List<Element> stubChildren;
+
     /**
      * 解析 layout 文件时的有效数据，保存在 Element 中
      *
      * @param fieldTypeName 组件标签上的类名，可能是一个单独的单词，如 TextView、Button 等，
      *                      也可能是全类名，如 androidx.appcompat.widget.AppCompatTextView
      * @param id            属性 android:id 的值，形如 @+id/text
-     * @param xmlTag        布局文件中 xml 标签对象
-     */
-    public Element(String fieldTypeName, String id, XmlTag xmlTag) {
-        // 如果传入的类型名是全类名，则用 . 分开只要最后一段
-        String[] segments = fieldTypeName.split("\\.");
-        if (segments.length > 1) {
-            this.fieldTypeName = segments[segments.length - 1];
-        } else {
-            this.fieldTypeName = fieldTypeName;
-        }
+     */
+    public Element(String fieldTypeName, String id) {
+        // 如果传入的类型名是全类名，则只要最后一段，相同的类名共用同一个字符串
+        this.fieldTypeName = NameUtils.getSimpleTypeName(fieldTypeName);
 
-        // 获取 id，根据 idPattern 中的正则表达式，group(2) 拿到的是 id 字符串
-        Matcher matcher = idPattern.matcher(id);
-        if (matcher.find() && matcher.groupCount() > 1) {
-            this.id = matcher.group(2);
-        }
+        // 获取 id，形如 @+id/text 中 id/ 之后的部分
+        this.id = NameUtils.parseId(id);
 
         if (this.id == null) {
             throw new IllegalArgumentException("Invalid format of view id.");
         }
-        this.xmlTag = xmlTag;
+    }
+
+    /**
+     * 用索引中的条目创建 Element，ViewStub 同时记录它引用的布局。声明了 inflatedId 时
+     * 字段保存的是 inflate 出来的控件，以 inflatedId 命名
+     */
+    public static Element fromEntry(LayoutIdEntry entry) {
+        Element element = new Element(entry.getTagName(), entry.getId());
+        if (entry.isStub()) {
+            element.stubLayout = entry.getStubLayout();
+            element.inflatedId = entry.getInflatedId() == null ? null : NameUtils.parseId(entry.getInflatedId());
+            if (element.inflatedId != null) {
+                element.fieldName = NameUtils.toCamelCase(element.inflatedId, true);
+            }
+        }
+        return element;
     }
 
     public String getId() {
@@ -91,6 +140,9 @@ public class Element {
 
     public void setId(String id) {
         this.id = id;
+        this.camelFieldName = null;
+        this.memberFieldName = null;
+        this.fullIdString = null;
     }
 
     public String getFieldTypeName() {
@@ -101,12 +153,19 @@ public class Element {
         this.fieldTypeName = typeName;
     }
 
-    public XmlTag getXmlTag() {
-        return xmlTag;
+    public List<String> getMissingVariants() {
+        return missingVariants;
     }
 
-    public void setXmlTag(XmlTag xmlTag) {
-        this.xmlTag = xmlTag;
+    public void setMissingVariants(List<String> missingVariants) {
+        this.missingVariants = missingVariants;
+    }
+
+    /**
+     * 该 id 是否在布局的所有变体中都存在
+     */
+    public boolean isInAllVariants() {
+        return missingVariants.isEmpty();
     }
 
     public boolean isCreateField() {
@@ -125,6 +184,57 @@ public class Element {
         this.createClickMethod = createClickMethod;
     }
 
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    public boolean isStub() {
+        return stubLayout != null;
+    }
+
+    public String getStubLayout() {
+        return stubLayout;
+    }
+
+    public String getInflatedId() {
+        return inflatedId;
+    }
+
+    /**
+     * 返回 ViewStub 布局中带 id 的控件，同一个 id 只保留一次。布局只在第一次调用时通过 loader
+     * 解析（loader 返回展开 include 之后的条目，找不到布局时返回 null），之后直接返回缓存
+     */
+    public List<Element> getStubChildren(Function<String, List<LayoutIdEntry>> loader) {
+        if (stubLayout == null) {
+            return Collections.emptyList();
+        }
+        if (stubChildren == null) {
+            List<LayoutIdEntry> entries = loader.apply(stubLayout);
+            Map<String, Element> children = new LinkedHashMap<>();
+            if (entries != null) {
+                for (LayoutIdEntry entry : entries) {
+                    Element child = fromEntry(entry);
+                    children.putIfAbsent(child.getId(), child);
+                }
+            }
+            stubChildren = new ArrayList<>(children.values());
+        }
+        return stubChildren;
+    }
+
+    /**
+     * 延迟查找时生成的访问方法名，如 tv_text 对应 getTvText。ViewStub 声明了 inflatedId 时
+     * 以 inflatedId 命名
+     */
+    public String getLazyAccessorName() {
+        String name = inflatedId != null ? NameUtils.toCamelCase(inflatedId) : getFieldName(NAME_STYLE_CAMEL);
+        return "get" + NameUtils.firstToUpperCase(name);
+    }
+
     /**
      * 获取组件的变量名，例如 private Button button; 中的 button，
      * 这个名字需要根据 id 字符串生成，并且当 fieldNameType 取值
@@ -135,34 +245,30 @@ public class Element {
         if (fieldName != null) {
             return fieldName;
         }
+        return getFieldName(fieldNameTypes);
+    }
 
-        if (fieldNameTypes == 1) {
-            fieldName = id;
-        } else {
-            String[] names = id.split("_");
-            StringBuilder sb = new StringBuilder();
-            if (fieldNameTypes == 2) {
+    /**
+     * 按 style 指定的命名风格返回根据 id 生成的名称，不受 setFieldName 影响。
+     * 每种风格只生成一次
+     */
+    public String getFieldName(int style) {
+        switch (style) {
+            case NAME_STYLE_CAMEL:
                 // aaBbCc
-                for (int i = 0; i < names.length; i++) {
-                    if (i == 0) {
-                        sb.append(names[i]);
-                    } else {
-                        sb.append(Utils.firstToUpperCase(names[i]));
-                    }
+                if (camelFieldName == null) {
+                    camelFieldName = NameUtils.toCamelCase(id, false);
                 }
-            } else if (fieldNameTypes == 3) {
+                return camelFieldName;
+            case NAME_STYLE_MEMBER:
                 // mAaBbCc
-                for (int i = 0; i < names.length; i++) {
-                    if (i == 0) {
-                        sb.append("m");
-                    }
-                    sb.append(Utils.firstToUpperCase(names[i]));
+                if (memberFieldName == null) {
+                    memberFieldName = NameUtils.toCamelCase(id, true);
                 }
-            }
-            fieldName = sb.toString();
+                return memberFieldName;
+            default:
+                return id;
         }
-
-        return fieldName;
     }
 
     public void setFieldName(String fieldName) {
@@ -173,7 +279,9 @@ public class Element {
      * 返回一个完全的表示 id 的字符串，如：R.id.xxx
      */
     public String getFullIdString() {
-        String prefix = "R.id.";
-        return prefix + id;
+        if (fullIdString == null) {
+            fullIdString = "R.id." + id;
+        }
+        return fullIdString;
     }
 }
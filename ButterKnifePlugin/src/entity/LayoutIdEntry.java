@@ -0,0 +1,95 @@
+package entity;
+
+/**
+ * 布局文件中一个带 id 的标签或一个 include 标签的提取结果，只保存纯文本数据，
+ * 可以直接写入索引，不持有任何 PSI 对象
+ */
+public class LayoutIdEntry {
+
+    public static final String VIEW_STUB = "ViewStub";
+
+    /**
+     * android:id 属性的原始值，形如 @+id/text1；include 标签没有声明 id 时为 null
+     */
+    private final String id;
+
+    /**
+     * 标签名，如果标签声明了 class 属性则为 class 的值
+     */
+    private final String tagName;
+
+    /**
+     * include 标签引用的布局名，形如 layout_view；非 include 标签为 null
+     */
+    private final String includeLayout;
+
+    /**
+     * ViewStub 标签 android:layout 引用的布局名，以及 android:inflatedId 的原始值；
+     * 非 ViewStub 标签都为 null。ViewStub 的布局在 inflate 之前不在视图树中，不随 include 展开
+     */
+    private final String stubLayout;
+    private final String inflatedId;
+
+    public LayoutIdEntry(String id, String tagName, String includeLayout) {
+        this(id, tagName, includeLayout, null, null);
+    }
+
+    public LayoutIdEntry(String id, String tagName, String includeLayout, String stubLayout, String inflatedId) {
+        this.id = id;
+        this.tagName = tagName;
+        this.includeLayout = includeLayout;
+        this.stubLayout = stubLayout;
+        this.inflatedId = inflatedId;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTagName() {
+        return tagName;
+    }
+
+    public String getIncludeLayout() {
+        return includeLayout;
+    }
+
+    public boolean isInclude() {
+        return includeLayout != null;
+    }
+
+    public String getStubLayout() {
+        return stubLayout;
+    }
+
+    public String getInflatedId() {
+        return inflatedId;
+    }
+
+    public boolean isStub() {
+        return stubLayout != null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LayoutIdEntry)) return false;
+        LayoutIdEntry that = (LayoutIdEntry) o;
+        return equals(id, that.id) && equals(tagName, that.tagName) && equals(includeLayout, that.includeLayout)
+                && equals(stubLayout, that.stubLayout) && equals(inflatedId, that.inflatedId);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = id != null ? id.hashCode() : 0;
+        result = 31 * result + (tagName != null ? tagName.hashCode() : 0);
+        result = 31 * result + (includeLayout != null ? includeLayout.hashCode() : 0);
+        result = 31 * result + (stubLayout != null ? stubLayout.hashCode() : 0);
+        result = 31 * result + (inflatedId != null ? inflatedId.hashCode() : 0);
+        return result;
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,164 @@
+package index;
+
+import com.intellij.ide.highlighter.XmlFileType;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.xml.XmlFile;
+import com.intellij.util.indexing.DataIndexer;
+import com.intellij.util.indexing.DefaultFileTypeSpecificInputFilter;
+import com.intellij.util.indexing.FileBasedIndex;
+import com.intellij.util.indexing.FileBasedIndexExtension;
+import com.intellij.util.indexing.FileContent;
+import com.intellij.util.indexing.ID;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.IOUtil;
+import com.intellij.util.io.KeyDescriptor;
+import entity.LayoutIdEntry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.Utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 布局 id 索引：key 为布局文件名（不含 .xml），value 为该布局文件中所有带 id 的标签
+ * 以及 include 标签，ViewStub 标签额外记录它的布局和 inflatedId。布局内容只在文件变化时由 IDE 重新索引一次，插件打开对话框时
+ * 直接读取索引，不再每次遍历 PSI 树
+ */
+public class LayoutIdIndex extends FileBasedIndexExtension<String, List<LayoutIdEntry>> {
+
+    public static final ID<String, List<LayoutIdEntry>> NAME = ID.create("butterknife.plugin.LayoutIdIndex");
+
+    /**
+     * 索引数据格式变化时需要增加版本号，IDE 会据此重建索引
+     */
+    private static final int VERSION = 3;
+
+    @NotNull
+    @Override
+    public ID<String, List<LayoutIdEntry>> getName() {
+        return NAME;
+    }
+
+    @NotNull
+    @Override
+    public DataIndexer<String, List<LayoutIdEntry>, FileContent> getIndexer() {
+        return inputData -> {
+            PsiFile psiFile = inputData.getPsiFile();
+            if (!(psiFile instanceof XmlFile)) {
+                return Collections.emptyMap();
+            }
+            List<LayoutIdEntry> entries = Utils.collectLayoutEntries((XmlFile) psiFile);
+            return Collections.singletonMap(inputData.getFile().getNameWithoutExtension(), entries);
+        };
+    }
+
+    @NotNull
+    @Override
+    public KeyDescriptor<String> getKeyDescriptor() {
+        return EnumeratorStringDescriptor.INSTANCE;
+    }
+
+    @NotNull
+    @Override
+    public DataExternalizer<List<LayoutIdEntry>> getValueExternalizer() {
+        return new DataExternalizer<List<LayoutIdEntry>>() {
+            @Override
+            public void save(@NotNull DataOutput out, List<LayoutIdEntry> value) throws IOException {
+                DataInputOutputUtil.writeINT(out, value.size());
+                for (LayoutIdEntry entry : value) {
+                    writeNullableString(out, entry.getId());
+                    writeNullableString(out, entry.getTagName());
+                    writeNullableString(out, entry.getIncludeLayout());
+                    writeNullableString(out, entry.getStubLayout());
+                    writeNullableString(out, entry.getInflatedId());
+                }
+            }
+
+            @Override
+            public List<LayoutIdEntry> read(@NotNull DataInput in) throws IOException {
+                int size = DataInputOutputUtil.readINT(in);
+                List<LayoutIdEntry> entries = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    entries.add(new LayoutIdEntry(readNullableString(in), readNullableString(in), readNullableString(in),
+                            readNullableString(in), readNullableString(in)));
+                }
+                return entries;
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public FileBasedIndex.InputFilter getInputFilter() {
+        return new DefaultFileTypeSpecificInputFilter(XmlFileType.INSTANCE) {
+            @Override
+            public boolean acceptInput(@NotNull VirtualFile file) {
+                return isLayoutFile(file);
+            }
+        };
+    }
+
+    @Override
+    public boolean dependsOnFileContent() {
+        return true;
+    }
+
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+
+    /**
+     * 只索引 res/layout*（包括 layout-land、layout-sw600dp 等限定符目录）下的 xml 文件，
+     * 其他目录中恰好以 layout 开头的文件夹不算
+     */
+    public static boolean isLayoutFile(@NotNull VirtualFile file) {
+        VirtualFile parent = file.getParent();
+        if (parent == null || !parent.getName().startsWith("layout")) {
+            return false;
+        }
+        VirtualFile resDirectory = parent.getParent();
+        return resDirectory != null && "res".equals(resDirectory.getName());
+    }
+
+    /**
+     * 从索引中读取 file 自身的条目（不展开 include），索引中没有时返回 null
+     */
+    @Nullable
+    public static List<LayoutIdEntry> getEntries(@NotNull Project project, @NotNull VirtualFile file) {
+        Map<String, List<LayoutIdEntry>> data = FileBasedIndex.getInstance().getFileData(NAME, file, project);
+        return data.get(file.getNameWithoutExtension());
+    }
+
+    /**
+     * 返回 scope 内名为 layoutName 的所有布局文件（包括各个限定符变体）。每个布局文件
+     * 在索引中都有一条以文件名为键的记录，所以不需要再查文件名索引
+     */
+    @NotNull
+    public static Collection<VirtualFile> getLayoutFiles(@NotNull String layoutName, @NotNull GlobalSearchScope scope) {
+        return FileBasedIndex.getInstance().getContainingFiles(NAME, layoutName, scope);
+    }
+
+    private static void writeNullableString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            IOUtil.writeUTF(out, value);
+        }
+    }
+
+    private static String readNullableString(DataInput in) throws IOException {
+        return in.readBoolean() ? IOUtil.readUTF(in) : null;
+    }
+}
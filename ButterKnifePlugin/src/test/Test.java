@@ -1,6 +1,5 @@
 package test;
 
-import com.intellij.psi.xml.XmlTag;
 import entity.Element;
 
 import java.util.regex.Matcher;
@@ -8,7 +7,7 @@ import java.util.regex.Pattern;
 
 public class Test {
     public static void main(String[] args) {
-        Element element = new Element("Button", "@+id/text1", null);
+        Element element = new Element("Button", "@+id/text1");
         String fieldName = element.getFieldName();
         System.out.println(fieldName);
 
@@ -0,0 +1,370 @@
+package util;
+
+import entity.Element;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 生成控件注入与事件注入代码的文本，ViewFieldMethodCreator 和命令行批量生成共用，
+ * 保证两边输出的代码完全一致
+ */
+public class BindingRenderer {
+
+    /**
+     * findViewById 方式下查找控件、设置监听的方法名
+     */
+    public static final String BIND_VIEWS_METHOD_NAME = "bindViews";
+
+    /**
+     * 延迟查找的控件使用的根布局字段，以及 ButterKnife 方式下给它赋值的方法名
+     */
+    public static final String LAZY_ROOT_FIELD_NAME = "mLazyRoot";
+    public static final String BIND_LAZY_VIEWS_METHOD_NAME = "bindLazyViews";
+
+    /**
+     * 释放控件引用的方法名
+     */
+    public static final String UNBIND_VIEWS_METHOD_NAME = "unbindViews";
+
+    /**
+     * 生成的 unbindViews() 方法体中的第一行注释，只有带这行注释的方法才会在重新生成时整体替换
+     */
+    public static final String UNBIND_VIEWS_MARKER = "// 由 ButterKnifePlugin 生成，重新生成时会整体替换";
+
+    /**
+     * ViewHolder 构造方法的参数名，以及 ViewHolder 中合并的点击方法名
+     */
+    private static final String VIEW_HOLDER_ROOT_NAME = "itemView";
+    private static final String MERGED_CLICK_METHOD_NAME = "onViewClicked";
+
+    /**
+     * 字段注入代码，形如：
+     * <pre>
+     * &#64;BindView(R.id.tvText)
+     * public TextView mTvText;
+     * </pre>
+     */
+    public static String renderField(Element element) {
+        return "@BindView(" + element.getFullIdString() + ")\n" + renderPlainField(element);
+    }
+
+    /**
+     * 不带注解的字段，由 bindViews 方法赋值，形如：
+     * <pre>
+     * public TextView mTvText;
+     * </pre>
+     */
+    public static String renderPlainField(Element element) {
+        StringBuilder text = new StringBuilder();
+        text.append("public ");
+        text.append(element.getFieldTypeName() + " ");
+        text.append(element.getFieldName() + ";");
+        return text.toString();
+    }
+
+    /**
+     * 点击事件方法，形如：
+     * <pre>
+     * &#64;OnClick(R.id.tvText)
+     * public void tvTextClick(TextView tvText) {
+     * }
+     * </pre>
+     */
+    public static String renderClickMethod(Element element, String methodName) {
+        return renderClickMethod(element, methodName, true);
+    }
+
+    /**
+     * annotated 为 false 时生成不带 &#64;OnClick 的方法，由 bindViews 中设置的监听调用
+     */
+    public static String renderClickMethod(Element element, String methodName, boolean annotated) {
+        StringBuilder methodBuilder = new StringBuilder();
+        if (annotated) {
+            methodBuilder.append("@OnClick(" + element.getFullIdString() + ")\n");
+        }
+        methodBuilder.append("public void " + methodName + "(" + element.getFieldTypeName() + " "
+                + getClickMethodName(element) + "){");
+        methodBuilder.append("\n}");
+        return methodBuilder.toString();
+    }
+
+    /**
+     * 所有点击事件合并到一个方法中，形如：
+     * <pre>
+     * &#64;OnClick({R.id.btnOk, R.id.btnCancel})
+     * public void onViewClicked(View view) {
+     *     switch (view.getId()) {
+     *         case R.id.btnOk:
+     *             break;
+     *         case R.id.btnCancel:
+     *             break;
+     *     }
+     * }
+     * </pre>
+     */
+    public static String renderMergedClickMethod(List<Element> elements, String methodName) {
+        return renderMergedClickMethod(elements, methodName, true);
+    }
+
+    public static String renderMergedClickMethod(List<Element> elements, String methodName, boolean annotated) {
+        StringBuilder methodBuilder = new StringBuilder();
+        if (annotated) {
+            methodBuilder.append("@OnClick({");
+            for (int i = 0; i < elements.size(); i++) {
+                if (i > 0) {
+                    methodBuilder.append(", ");
+                }
+                methodBuilder.append(elements.get(i).getFullIdString());
+            }
+            methodBuilder.append("})\n");
+        }
+        methodBuilder.append("public void " + methodName + "(View view){\n");
+        methodBuilder.append("switch (view.getId()) {\n");
+        for (Element element : elements) {
+            methodBuilder.append("case " + element.getFullIdString() + ":\n");
+            methodBuilder.append("break;\n");
+        }
+        methodBuilder.append("}\n}");
+        return methodBuilder.toString();
+    }
+
+    /**
+     * bindViews 中查找控件的语句，形如：
+     * <pre>
+     * mTvText = (TextView) root.findViewById(R.id.tv_text);
+     * </pre>
+     */
+    public static String renderFindViewById(Element element, String rootName) {
+        return element.getFieldName() + " = (" + element.getFieldTypeName() + ") " + rootName + ".findViewById("
+                + element.getFullIdString() + ");";
+    }
+
+    /**
+     * bindViews 中设置点击监听的语句。生成了字段时直接使用字段，否则现查一次控件。
+     * merged 为 true 时所有控件共用 methodName(View view)，否则调用各自的方法，形如：
+     * <pre>
+     * mTvText.setOnClickListener(v -> tvTextClick((TextView) v));
+     * root.findViewById(R.id.btn_ok).setOnClickListener(this::onViewClicked);
+     * </pre>
+     */
+    public static String renderClickListener(Element element, String methodName, boolean merged, String rootName) {
+        // 延迟查找的控件不能用字段，否则绑定时字段还是 null
+        return renderClickListener(element, methodName, merged, rootName, element.isCreateField() && !element.isLazy());
+    }
+
+    private static String renderClickListener(Element element, String methodName, boolean merged, String rootName,
+                                              boolean useField) {
+        String target = useField ? element.getFieldName()
+                : rootName + ".findViewById(" + element.getFullIdString() + ")";
+        if (merged) {
+            return target + ".setOnClickListener(this::" + methodName + ");";
+        }
+        return target + ".setOnClickListener(v -> " + methodName + "((" + element.getFieldTypeName() + ") v));";
+    }
+
+    /**
+     * 延迟查找的控件对应的字段，只能通过访问方法使用，形如：
+     * <pre>
+     * private TextView mTvText;
+     * </pre>
+     */
+    public static String renderLazyField(Element element) {
+        return "private " + element.getFieldTypeName() + " " + element.getFieldName() + ";";
+    }
+
+    /**
+     * 第一次调用时才从 LAZY_ROOT_FIELD_NAME 中查找控件并缓存的访问方法，形如：
+     * <pre>
+     * public TextView getTvText() {
+     *     if (mTvText == null) {
+     *         mTvText = (TextView) mLazyRoot.findViewById(R.id.tv_text);
+     *     }
+     *     return mTvText;
+     * }
+     * </pre>
+     */
+    public static String renderLazyAccessor(Element element) {
+        String fieldName = element.getFieldName();
+        return "public " + element.getFieldTypeName() + " " + element.getLazyAccessorName() + "(){\n"
+                + "if (" + fieldName + " == null) {\n"
+                + renderFindViewById(element, LAZY_ROOT_FIELD_NAME) + "\n"
+                + "}\n"
+                + "return " + fieldName + ";\n"
+                + "}";
+    }
+
+    /**
+     * ViewStub 第一次使用时才 inflate，并在此时查找其布局中的控件，形如：
+     * <pre>
+     * public View getPanelDetail() {
+     *     if (mPanelDetail == null) {
+     *         mPanelDetail = ((ViewStub) mLazyRoot.findViewById(R.id.stub_detail)).inflate();
+     *         mTvTitle = (TextView) mPanelDetail.findViewById(R.id.tv_title);
+     *     }
+     *     return mPanelDetail;
+     * }
+     * </pre>
+     * 字段 mPanelDetail 保存 inflate 出来的控件，类型为 View
+     */
+    public static String renderStubAccessor(Element stub, List<Element> children) {
+        String fieldName = stub.getFieldName();
+        StringBuilder methodBuilder = new StringBuilder();
+        methodBuilder.append("public View ").append(stub.getLazyAccessorName()).append("(){\n");
+        methodBuilder.append("if (").append(fieldName).append(" == null) {\n");
+        methodBuilder.append(fieldName).append(" = ((").append(stub.getFieldTypeName()).append(") ")
+                .append(LAZY_ROOT_FIELD_NAME).append(".findViewById(").append(stub.getFullIdString())
+                .append(")).inflate();\n");
+        for (Element child : children) {
+            methodBuilder.append(renderFindViewById(child, fieldName)).append('\n');
+        }
+        methodBuilder.append("}\n");
+        methodBuilder.append("return ").append(fieldName).append(";\n");
+        methodBuilder.append("}");
+        return methodBuilder.toString();
+    }
+
+    public static String renderStubField(Element stub) {
+        return "private View " + stub.getFieldName() + ";";
+    }
+
+    public static String renderLazyRootField() {
+        return "private View " + LAZY_ROOT_FIELD_NAME + ";";
+    }
+
+    /**
+     * ButterKnife 方式下保存根布局的方法，ViewFieldMethodCreator 会在 ButterKnife.bind 之后插入对它的调用，形如：
+     * <pre>
+     * public void bindLazyViews(View root) {
+     *     mLazyRoot = root;
+     * }
+     * </pre>
+     */
+    public static String renderBindLazyViewsMethod() {
+        return "public void " + BIND_LAZY_VIEWS_METHOD_NAME + "(View root){\n"
+                + renderLazyRootAssignment("root") + "\n"
+                + "}";
+    }
+
+    public static String renderLazyRootAssignment(String rootName) {
+        return LAZY_ROOT_FIELD_NAME + " = " + rootName + ";";
+    }
+
+    /**
+     * 先移除 listenerFields 上的点击监听，再把 fields 全部置空，形如：
+     * <pre>
+     * public void unbindViews() {
+     *     // 由 ButterKnifePlugin 生成，重新生成时会整体替换
+     *     if (mBtnOk != null) {
+     *         mBtnOk.setOnClickListener(null);
+     *     }
+     *     mBtnOk = null;
+     *     mTvText = null;
+     * }
+     * </pre>
+     */
+    public static String renderUnbindViewsMethod(List<String> fields, List<String> listenerFields) {
+        StringBuilder methodBuilder = new StringBuilder();
+        methodBuilder.append("public void " + UNBIND_VIEWS_METHOD_NAME + "(){\n");
+        methodBuilder.append(UNBIND_VIEWS_MARKER).append('\n');
+        for (String field : listenerFields) {
+            methodBuilder.append("if (").append(field).append(" != null) {\n");
+            methodBuilder.append(field).append(".setOnClickListener(null);\n");
+            methodBuilder.append("}\n");
+        }
+        for (String field : fields) {
+            methodBuilder.append(renderNullAssignment(field)).append('\n');
+        }
+        methodBuilder.append("}");
+        return methodBuilder.toString();
+    }
+
+    private static String renderNullAssignment(String field) {
+        return field + " = null;";
+    }
+
+    /**
+     * 包含 statements 的 bindViews 方法，语句中的根布局参数名为 root，形如：
+     * <pre>
+     * public void bindViews(View root) {
+     *     mTvText = (TextView) root.findViewById(R.id.tv_text);
+     * }
+     * </pre>
+     */
+    public static String renderBindViewsMethod(List<String> statements) {
+        StringBuilder methodBuilder = new StringBuilder();
+        methodBuilder.append("public void " + BIND_VIEWS_METHOD_NAME + "(View root){\n");
+        for (String statement : statements) {
+            methodBuilder.append(statement).append('\n');
+        }
+        methodBuilder.append("}");
+        return methodBuilder.toString();
+    }
+
+    /**
+     * RecyclerView 列表项的 ViewHolder，控件在创建 ViewHolder 时查找一次并保存在 final 字段中，
+     * 每次 bind 不再查找，形如：
+     * <pre>
+     * static class ItemUserViewHolder extends RecyclerView.ViewHolder {
+     *     final TextView mTvName;
+     *
+     *     ItemUserViewHolder(View itemView) {
+     *         super(itemView);
+     *         mTvName = (TextView) itemView.findViewById(R.id.tv_name);
+     *         mBtnMore.setOnClickListener(v -> btnMoreClick((Button) v));
+     *     }
+     *
+     *     void bind(User item) {
+     *     }
+     *
+     *     public void btnMoreClick(Button btnMore) {
+     *     }
+     * }
+     * </pre>
+     * 延迟查找对 ViewHolder 没有意义，字段都在构造方法中赋值
+     */
+    public static String renderViewHolder(String className, String superClassName, List<Element> elements,
+                                          String itemTypeName, boolean mergeClickMethods) {
+        StringBuilder fields = new StringBuilder();
+        StringBuilder constructor = new StringBuilder();
+        constructor.append(className).append("(View ").append(VIEW_HOLDER_ROOT_NAME).append("){\n");
+        constructor.append("super(").append(VIEW_HOLDER_ROOT_NAME).append(");\n");
+        List<Element> clickElements = new ArrayList<>();
+        for (Element element : elements) {
+            if (element.isCreateField()) {
+                fields.append("final ").append(element.getFieldTypeName()).append(' ')
+                        .append(element.getFieldName()).append(";\n");
+                constructor.append(renderFindViewById(element, VIEW_HOLDER_ROOT_NAME)).append('\n');
+            }
+            if (element.isCreateClickMethod()) {
+                clickElements.add(element);
+            }
+        }
+
+        StringBuilder methods = new StringBuilder();
+        methods.append("void bind(").append(itemTypeName).append(" item){\n}\n");
+        if (mergeClickMethods && !clickElements.isEmpty()) {
+            methods.append(renderMergedClickMethod(clickElements, MERGED_CLICK_METHOD_NAME, false)).append('\n');
+        }
+        for (Element element : clickElements) {
+            String methodName = mergeClickMethods ? MERGED_CLICK_METHOD_NAME : getClickMethodName(element) + "Click";
+            // ViewHolder 中的字段都在设置监听之前赋值，生成了字段时总是直接使用字段
+            constructor.append(renderClickListener(element, methodName, mergeClickMethods, VIEW_HOLDER_ROOT_NAME,
+                    element.isCreateField())).append('\n');
+            if (!mergeClickMethods) {
+                methods.append(renderClickMethod(element, methodName, false)).append('\n');
+            }
+        }
+        constructor.append("}\n");
+
+        return "static class " + className + " extends " + superClassName + "{\n"
+                + fields + constructor + methods + "}";
+    }
+
+    /**
+     * 获取点击方法的名称   tv_text   tvText
+     */
+    public static String getClickMethodName(Element element) {
+        return element.getFieldName(Element.NAME_STYLE_CAMEL);
+    }
+}
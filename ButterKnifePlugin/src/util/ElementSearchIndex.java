@@ -0,0 +1,171 @@
+package util;
+
+import entity.Element;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 对话框过滤用的三元组（trigram）索引，在对话框打开时建立一次。每个 Element 的 id、
+ * 字段名和控件类型拼成一段小写文本，按每连续三个字符建立倒排表。查询时取查询串中
+ * 倒排表最短的三元组作为候选行，再逐行确认是否包含查询串，上千个 id 也能在一帧内完成。
+ * 修改字段名后用 update 只更新变化的那一行
+ */
+public class ElementSearchIndex {
+
+    /**
+     * 短于三元组长度的查询直接扫描全部文本
+     */
+    private static final int GRAM = 3;
+
+    private final String[] mTexts;
+    private final Map<Long, int[]> mPostings = new HashMap<>();
+
+    public ElementSearchIndex(List<Element> elements) {
+        mTexts = new String[elements.size()];
+        // 建立过程中倒排表的第 0 位记录已使用的长度
+        Map<Long, int[]> postings = new HashMap<>();
+        for (int row = 0; row < elements.size(); row++) {
+            String text = toText(elements.get(row));
+            mTexts[row] = text;
+            for (int i = 0; i + GRAM <= text.length(); i++) {
+                Long key = gram(text, i);
+                int[] rows = postings.get(key);
+                if (rows == null) {
+                    rows = new int[]{0, 0, 0, 0};
+                } else if (rows[rows[0]] == row) {
+                    // 行号递增加入，同一行重复出现的三元组只记录一次
+                    continue;
+                } else if (rows[0] + 1 == rows.length) {
+                    rows = Arrays.copyOf(rows, rows.length * 2);
+                }
+                rows[++rows[0]] = row;
+                postings.put(key, rows);
+            }
+        }
+        for (Map.Entry<Long, int[]> entry : postings.entrySet()) {
+            int[] rows = entry.getValue();
+            mPostings.put(entry.getKey(), Arrays.copyOfRange(rows, 1, rows[0] + 1));
+        }
+    }
+
+    /**
+     * element 的字段名等被修改后更新第 row 行：只从新旧文本不同的三元组的倒排表中删除或加入这一行，
+     * 倒排表保持行号升序
+     */
+    public void update(int row, Element element) {
+        String oldText = mTexts[row];
+        String newText = toText(element);
+        if (newText.equals(oldText)) {
+            return;
+        }
+        mTexts[row] = newText;
+        Set<Long> oldGrams = grams(oldText);
+        Set<Long> newGrams = grams(newText);
+        for (Long key : oldGrams) {
+            if (!newGrams.contains(key)) {
+                removeRow(key, row);
+            }
+        }
+        for (Long key : newGrams) {
+            if (!oldGrams.contains(key)) {
+                addRow(key, row);
+            }
+        }
+    }
+
+    /**
+     * 返回 id、字段名或控件类型中包含 query（忽略大小写）的行，query 为空时返回所有行
+     */
+    public BitSet search(String query) {
+        BitSet result = new BitSet(mTexts.length);
+        String text = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+        if (text.isEmpty()) {
+            result.set(0, mTexts.length);
+            return result;
+        }
+
+        if (text.length() < GRAM) {
+            for (int row = 0; row < mTexts.length; row++) {
+                if (mTexts[row].contains(text)) {
+                    result.set(row);
+                }
+            }
+            return result;
+        }
+
+        int[] candidates = null;
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            int[] rows = mPostings.get(gram(text, i));
+            if (rows == null) {
+                return result;
+            }
+            if (candidates == null || rows.length < candidates.length) {
+                candidates = rows;
+            }
+        }
+        for (int row : candidates) {
+            if (mTexts[row].contains(text)) {
+                result.set(row);
+            }
+        }
+        return result;
+    }
+
+    private void removeRow(Long key, int row) {
+        int[] rows = mPostings.get(key);
+        int index = rows == null ? -1 : Arrays.binarySearch(rows, row);
+        if (index < 0) {
+            return;
+        }
+        if (rows.length == 1) {
+            mPostings.remove(key);
+            return;
+        }
+        int[] result = new int[rows.length - 1];
+        System.arraycopy(rows, 0, result, 0, index);
+        System.arraycopy(rows, index + 1, result, index, result.length - index);
+        mPostings.put(key, result);
+    }
+
+    private void addRow(Long key, int row) {
+        int[] rows = mPostings.get(key);
+        if (rows == null) {
+            mPostings.put(key, new int[]{row});
+            return;
+        }
+        int index = Arrays.binarySearch(rows, row);
+        if (index >= 0) {
+            return;
+        }
+        index = -index - 1;
+        int[] result = new int[rows.length + 1];
+        System.arraycopy(rows, 0, result, 0, index);
+        result[index] = row;
+        System.arraycopy(rows, index, result, index + 1, rows.length - index);
+        mPostings.put(key, result);
+    }
+
+    private static String toText(Element element) {
+        return (element.getId() + '\n' + element.getFieldName() + '\n' + element.getFieldTypeName())
+                .toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<Long> grams(String text) {
+        Set<Long> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(gram(text, i));
+        }
+        return grams;
+    }
+
+    private static long gram(String text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+}
@@ -0,0 +1,157 @@
+package util;
+
+import entity.LayoutIdEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 展开布局中的 include 标签。每个被 include 的布局只计算一次 id 集合并按查找范围和布局名缓存，
+ * 缓存同时记录该布局及其所有被 include 布局的修改戳，任何一个文件变化后缓存失效。
+ * 展开过程中会检测 include 循环，避免无限递归
+ */
+public class IncludeResolver {
+
+    /**
+     * 布局内容的来源，插件中由 PSI/索引提供，命令行中由 StAX 解析结果提供
+     */
+    public interface LayoutSource {
+        /**
+         * 返回名为 layoutName 的布局自身的条目（不展开 include），找不到时返回 null
+         */
+        List<LayoutIdEntry> getEntries(String layoutName);
+
+        /**
+         * 返回名为 layoutName 的布局当前的修改戳，找不到时返回 -1
+         */
+        long getModificationStamp(String layoutName);
+
+        /**
+         * 返回布局查找范围的键。不同 module 中可能有同名的布局文件，缓存按这个键分开保存，
+         * 查找范围相同的来源需要返回相等的键
+         */
+        Object getScopeKey();
+    }
+
+    private static class CachedLayout {
+        /**
+         * 展开所有 include 之后的 id 条目
+         */
+        final List<LayoutIdEntry> ids;
+        /**
+         * 参与计算的每个布局的修改戳，包括布局自身
+         */
+        final Map<String, Long> stamps;
+
+        CachedLayout(List<LayoutIdEntry> ids, Map<String, Long> stamps) {
+            this.ids = ids;
+            this.stamps = stamps;
+        }
+
+        boolean isUpToDate(LayoutSource source) {
+            for (Map.Entry<String, Long> entry : stamps.entrySet()) {
+                if (source.getModificationStamp(entry.getKey()) != entry.getValue()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 一次展开过程中的状态：正在展开的布局链（用于检测循环）以及是否遇到过循环
+     */
+    private static class Resolution {
+        final Set<String> resolving = new LinkedHashSet<>();
+        boolean cycleDetected;
+    }
+
+    /**
+     * 查找范围的键 -> 布局名 -> 展开结果
+     */
+    private final Map<Object, Map<String, CachedLayout>> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 展开名为 layoutName 的某个具体布局文件的条目 entries 中的 include，返回所有带 id 的条目。
+     * 同名布局可能有多个限定符变体（layout-land 等），所以根布局自身不走缓存
+     */
+    public List<LayoutIdEntry> expand(String layoutName, List<LayoutIdEntry> entries, LayoutSource source) {
+        Resolution resolution = new Resolution();
+        resolution.resolving.add(layoutName);
+        List<LayoutIdEntry> ids = new ArrayList<>();
+        expandInto(entries, source, resolution, ids, new HashMap<>());
+        return ids;
+    }
+
+    /**
+     * 返回名为 layoutName 的布局展开 include 之后的所有 id 条目，找不到布局时返回 null
+     */
+    public List<LayoutIdEntry> resolve(String layoutName, LayoutSource source) {
+        CachedLayout layout = resolve(layoutName, source, new Resolution());
+        return layout == null ? null : layout.ids;
+    }
+
+    private CachedLayout resolve(String layoutName, LayoutSource source, Resolution resolution) {
+        Map<String, CachedLayout> scopeCache = cache.computeIfAbsent(source.getScopeKey(), key -> new ConcurrentHashMap<>());
+        CachedLayout cached = scopeCache.get(layoutName);
+        if (cached != null && cached.isUpToDate(source)) {
+            return cached;
+        }
+
+        List<LayoutIdEntry> entries = source.getEntries(layoutName);
+        if (entries == null) {
+            return null;
+        }
+
+        resolution.resolving.add(layoutName);
+        boolean outerCycle = resolution.cycleDetected;
+        resolution.cycleDetected = false;
+        try {
+            Map<String, Long> stamps = new HashMap<>();
+            stamps.put(layoutName, source.getModificationStamp(layoutName));
+            List<LayoutIdEntry> ids = new ArrayList<>();
+            expandInto(entries, source, resolution, ids, stamps);
+
+            CachedLayout layout = new CachedLayout(Collections.unmodifiableList(ids), stamps);
+            // 被循环截断的结果依赖于从哪个布局开始展开，不能缓存
+            if (!resolution.cycleDetected) {
+                scopeCache.put(layoutName, layout);
+            }
+            return layout;
+        } finally {
+            resolution.resolving.remove(layoutName);
+            resolution.cycleDetected |= outerCycle;
+        }
+    }
+
+    private void expandInto(List<LayoutIdEntry> entries, LayoutSource source, Resolution resolution,
+                            List<LayoutIdEntry> ids, Map<String, Long> stamps) {
+        for (LayoutIdEntry entry : entries) {
+            if (entry.isInclude()) {
+                String includeLayout = entry.getIncludeLayout();
+                if (resolution.resolving.contains(includeLayout)) {
+                    // include 循环，跳过这一层 include
+                    resolution.cycleDetected = true;
+                    continue;
+                }
+
+                CachedLayout included = resolve(includeLayout, source, resolution);
+                if (included != null) {
+                    ids.addAll(included.ids);
+                    stamps.putAll(included.stamps);
+                    continue;
+                }
+            }
+
+            if (entry.getId() != null) {
+                ids.add(entry);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package util;
+
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleUtilCore;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.search.FilenameIndex;
+import com.intellij.psi.search.GlobalSearchScope;
+import index.LayoutIdIndex;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 按布局名查找布局文件。查找范围限定在当前文件所在 module 及其依赖的 module 中，
+ * 不再扫描所有库；同名布局在 layout、layout-land、layout-sw600dp 等限定符目录下的
+ * 变体会全部返回，默认的 layout 目录排在最前面
+ */
+public class LayoutLocator {
+
+    /**
+     * 返回查找布局时使用的范围，context 不属于任何 module 时退回到整个工程（不含库）
+     */
+    public static GlobalSearchScope getLayoutScope(Project project, PsiFile context) {
+        Module module = context == null ? null : ModuleUtilCore.findModuleForPsiElement(context);
+        if (module == null) {
+            return GlobalSearchScope.projectScope(project);
+        }
+        return GlobalSearchScope.moduleWithDependenciesScope(module);
+    }
+
+    /**
+     * 返回 scope 中名为 layoutName 的所有布局变体，没有找到时返回空集合。索引可用时直接从
+     * LayoutIdIndex 中按布局名取出文件，索引未就绪时退回到按文件名查找
+     */
+    public static List<PsiFile> findLayoutFiles(Project project, String layoutName, GlobalSearchScope scope) {
+        List<PsiFile> layouts = new ArrayList<>();
+        if (DumbService.isDumb(project)) {
+            for (PsiFile psiFile : FilenameIndex.getFilesByName(project, layoutName + ".xml", scope)) {
+                VirtualFile virtualFile = psiFile.getVirtualFile();
+                if (virtualFile != null && LayoutIdIndex.isLayoutFile(virtualFile)) {
+                    layouts.add(psiFile);
+                }
+            }
+        } else {
+            PsiManager psiManager = PsiManager.getInstance(project);
+            for (VirtualFile virtualFile : LayoutIdIndex.getLayoutFiles(layoutName, scope)) {
+                PsiFile psiFile = psiManager.findFile(virtualFile);
+                if (psiFile != null) {
+                    layouts.add(psiFile);
+                }
+            }
+        }
+        layouts.sort((a, b) -> getQualifier(a).compareTo(getQualifier(b)));
+        return layouts;
+    }
+
+    /**
+     * 返回 layouts（由 R.layout 引用直接解析得到）所在 res 目录下同名的所有布局变体，不需要查索引。
+     * 已经失效的文件会被忽略
+     */
+    public static List<PsiFile> findLayoutVariants(Project project, List<PsiFile> layouts) {
+        Set<PsiFile> variants = new LinkedHashSet<>();
+        PsiManager psiManager = PsiManager.getInstance(project);
+        for (PsiFile layout : layouts) {
+            VirtualFile virtualFile = layout.isValid() ? layout.getVirtualFile() : null;
+            VirtualFile parent = virtualFile == null ? null : virtualFile.getParent();
+            VirtualFile resDirectory = parent == null ? null : parent.getParent();
+            if (resDirectory == null) {
+                continue;
+            }
+            for (VirtualFile directory : resDirectory.getChildren()) {
+                VirtualFile variant = directory.isDirectory() && directory.getName().startsWith("layout")
+                        ? directory.findChild(virtualFile.getName()) : null;
+                PsiFile psiFile = variant == null ? null : psiManager.findFile(variant);
+                if (psiFile != null) {
+                    variants.add(psiFile);
+                }
+            }
+        }
+        List<PsiFile> result = new ArrayList<>(variants);
+        result.sort((a, b) -> getQualifier(a).compareTo(getQualifier(b)));
+        return result;
+    }
+
+    /**
+     * 返回布局文件所在的资源目录名，如 layout、layout-land
+     */
+    public static String getQualifier(PsiFile psiFile) {
+        VirtualFile virtualFile = psiFile.getVirtualFile();
+        VirtualFile parent = virtualFile == null ? null : virtualFile.getParent();
+        return parent == null ? "" : parent.getName();
+    }
+}
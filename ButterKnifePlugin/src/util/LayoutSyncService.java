@@ -0,0 +1,506 @@
+package util;
+
+import com.intellij.notification.NotificationAction;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.PsiTreeChangeAdapter;
+import com.intellij.psi.PsiTreeChangeEvent;
+import com.intellij.psi.SmartPointerManager;
+import com.intellij.psi.SmartPsiElementPointer;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.xml.XmlAttribute;
+import com.intellij.psi.xml.XmlDocument;
+import com.intellij.psi.xml.XmlFile;
+import com.intellij.psi.xml.XmlTag;
+import com.intellij.util.Alarm;
+import entity.Element;
+import entity.LayoutIdEntry;
+import index.LayoutIdIndex;
+import org.jetbrains.annotations.NotNull;
+import view.ViewFieldMethodCreator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 布局变化时自动同步绑定代码。对开启了同步的类，记录每个 id 在其布局（包括 include 进来的
+ * 布局和各个限定符变体）中出现的次数；布局的 PSI 变化时只统计变化的标签带来的 id 增减，
+ * 一段时间内的连续编辑合并后，在一个写命令中通过 ViewFieldMethodCreator 增加对应的绑定代码。
+ * 布局中消失的 id 不会自动删除用户代码，而是显示一个通知，由用户点击其中的链接后再删除。
+ * 所有状态只在 EDT 上访问
+ */
+public class LayoutSyncService implements Disposable {
+
+    private static final int DEBOUNCE_MS = 500;
+    private static final String COMMAND_NAME = "ButterKnife Sync";
+
+    /**
+     * 一个开启了同步的类
+     */
+    private static class SyncTarget {
+        final SmartPsiElementPointer<PsiClass> classPointer;
+        final List<String> rootLayouts;
+        final ViewFieldMethodCreator.Backend backend;
+        /**
+         * 根布局以及它直接或间接 include 的所有布局名
+         */
+        Set<String> watchedLayouts = new HashSet<>();
+        /**
+         * 每个 id 在所有被监听的布局文件中出现的次数
+         */
+        Map<String, Integer> idCounts = new HashMap<>();
+        /**
+         * 每个 id 对应的条目，包括控件类型以及 ViewStub 引用的布局和 inflatedId
+         */
+        Map<String, LayoutIdEntry> idEntries = new HashMap<>();
+
+        SyncTarget(SmartPsiElementPointer<PsiClass> classPointer, List<String> rootLayouts, ViewFieldMethodCreator.Backend backend) {
+            this.classPointer = classPointer;
+            this.rootLayouts = rootLayouts;
+            this.backend = backend;
+        }
+    }
+
+    private final Project mProject;
+    private final Alarm mAlarm;
+    private final List<SyncTarget> mTargets = new ArrayList<>();
+    /**
+     * 所有类监听的布局名的并集，用来快速跳过无关的文件
+     */
+    private final Set<String> mWatchedLayouts = new HashSet<>();
+    /**
+     * 尚未应用的 id 增减，按布局名、id 累加
+     */
+    private final Map<String, Map<String, Integer>> mPendingDeltas = new HashMap<>();
+    private final Map<String, LayoutIdEntry> mPendingEntries = new HashMap<>();
+    /**
+     * include 发生变化或者无法确定变化范围的布局，应用时重新统计
+     */
+    private final Set<String> mRecountLayouts = new HashSet<>();
+    /**
+     * 最近一次 beforeChildrenChange 之后是否收到了子元素级别的事件
+     */
+    private boolean mChildEventSeen;
+
+    public LayoutSyncService(Project project) {
+        mProject = project;
+        mAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, this);
+        PsiManager.getInstance(project).addPsiTreeChangeListener(new LayoutChangeListener(), this);
+    }
+
+    public static LayoutSyncService getInstance(Project project) {
+        return ServiceManager.getService(project, LayoutSyncService.class);
+    }
+
+    /**
+     * 为 psiClass 开启同步，layoutNames 是它绑定的布局，新增的 id 按 backend 方式生成。
+     * 已经开启时用新的设置替换
+     */
+    public void watch(PsiClass psiClass, List<String> layoutNames, ViewFieldMethodCreator.Backend backend) {
+        unwatch(psiClass);
+        SyncTarget target = new SyncTarget(SmartPointerManager.createPointer(psiClass), new ArrayList<>(layoutNames), backend);
+        recount(target, psiClass);
+        mTargets.add(target);
+        updateWatchedLayouts();
+    }
+
+    public void unwatch(PsiClass psiClass) {
+        mTargets.removeIf(target -> {
+            PsiClass element = target.classPointer.getElement();
+            return element == null || element.equals(psiClass);
+        });
+        updateWatchedLayouts();
+    }
+
+    public boolean isWatching(PsiClass psiClass) {
+        for (SyncTarget target : mTargets) {
+            if (psiClass.equals(target.classPointer.getElement())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void dispose() {
+        mTargets.clear();
+        mWatchedLayouts.clear();
+    }
+
+    private void updateWatchedLayouts() {
+        mWatchedLayouts.clear();
+        for (SyncTarget target : mTargets) {
+            mWatchedLayouts.addAll(target.watchedLayouts);
+        }
+    }
+
+    /**
+     * 从 PSI 重新统计 target 的所有布局中每个 id 出现的次数，同时找出 include 进来的布局
+     */
+    private void recount(SyncTarget target, PsiClass psiClass) {
+        GlobalSearchScope scope = LayoutLocator.getLayoutScope(mProject, psiClass.getContainingFile());
+        Set<String> watched = new LinkedHashSet<>();
+        Map<String, Integer> counts = new HashMap<>();
+        Map<String, LayoutIdEntry> entries = new HashMap<>();
+        Deque<String> queue = new ArrayDeque<>(target.rootLayouts);
+        while (!queue.isEmpty()) {
+            String layoutName = queue.poll();
+            if (!watched.add(layoutName)) {
+                continue;
+            }
+            for (PsiFile psiFile : LayoutLocator.findLayoutFiles(mProject, layoutName, scope)) {
+                if (!(psiFile instanceof XmlFile)) {
+                    continue;
+                }
+                for (LayoutIdEntry entry : Utils.collectLayoutEntries((XmlFile) psiFile)) {
+                    if (entry.isInclude()) {
+                        queue.add(entry.getIncludeLayout());
+                        continue;
+                    }
+                    String id = NameUtils.parseId(entry.getId());
+                    if (id != null) {
+                        counts.merge(id, 1, Integer::sum);
+                        entries.putIfAbsent(id, entry);
+                    }
+                }
+            }
+        }
+        target.watchedLayouts = watched;
+        target.idCounts = counts;
+        target.idEntries = entries;
+    }
+
+    /**
+     * 把 element 带来的 id 按 sign（+1 或 -1）计入 layoutName 的待应用变化。element 是标签时
+     * 统计它和所有子标签的 id；在 android:id 属性内部时只统计这个属性的 id；其它位置的变化
+     * 不影响 id
+     */
+    private void collect(String layoutName, PsiElement element, int sign) {
+        if (element == null || mRecountLayouts.contains(layoutName)) {
+            return;
+        }
+        if (element instanceof XmlFile || element instanceof XmlDocument) {
+            mRecountLayouts.add(layoutName);
+            return;
+        }
+
+        if (element instanceof XmlTag) {
+            XmlTag tag = (XmlTag) element;
+            addTag(layoutName, tag, sign);
+            for (XmlTag child : PsiTreeUtil.findChildrenOfType(tag, XmlTag.class)) {
+                addTag(layoutName, child, sign);
+            }
+            return;
+        }
+
+        XmlAttribute attribute = PsiTreeUtil.getParentOfType(element, XmlAttribute.class, false);
+        if (attribute == null) {
+            // 标签之间的文本、空白等；其中有标签时按标签统计
+            for (XmlTag child : PsiTreeUtil.findChildrenOfType(element, XmlTag.class)) {
+                addTag(layoutName, child, sign);
+            }
+            return;
+        }
+        XmlTag tag = attribute.getParent();
+        if (tag == null) {
+            return;
+        }
+        String attributeName = attribute.getName();
+        if ("android:id".equals(attributeName)) {
+            addTag(layoutName, tag, sign);
+        } else if ("include".equalsIgnoreCase(tag.getName()) && "layout".equals(attributeName)
+                || LayoutIdEntry.VIEW_STUB.equals(tag.getName())
+                && ("android:layout".equals(attributeName) || "android:inflatedId".equals(attributeName))) {
+            // include 的布局或者 ViewStub 的访问方法变了，应用时重新统计
+            mRecountLayouts.add(layoutName);
+        }
+    }
+
+    private void addTag(String layoutName, XmlTag tag, int sign) {
+        if ("include".equalsIgnoreCase(tag.getName())) {
+            // include 的布局可能增加或减少了，应用时重新统计
+            mRecountLayouts.add(layoutName);
+            return;
+        }
+        LayoutIdEntry entry = Utils.toLayoutEntry(tag);
+        String id = entry == null ? null : NameUtils.parseId(entry.getId());
+        if (id == null) {
+            return;
+        }
+        mPendingDeltas.computeIfAbsent(layoutName, name -> new HashMap<>()).merge(id, sign, Integer::sum);
+        if (sign > 0) {
+            mPendingEntries.put(id, entry);
+        }
+    }
+
+    private void schedule() {
+        mAlarm.cancelAllRequests();
+        mAlarm.addRequest(this::applyPending, DEBOUNCE_MS);
+    }
+
+    /**
+     * 把累积的变化应用到所有相关的类：新增的 id 在一个写命令中生成绑定，消失的 id 只发出通知
+     */
+    private void applyPending() {
+        if (mProject.isDisposed()) {
+            return;
+        }
+        if (DumbService.isDumb(mProject)) {
+            DumbService.getInstance(mProject).runWhenSmart(this::schedule);
+            return;
+        }
+        PsiDocumentManager.getInstance(mProject).commitAllDocuments();
+
+        Map<String, Map<String, Integer>> deltas = new HashMap<>(mPendingDeltas);
+        Map<String, LayoutIdEntry> entries = new HashMap<>(mPendingEntries);
+        Set<String> recountLayouts = new HashSet<>(mRecountLayouts);
+        mPendingDeltas.clear();
+        mPendingEntries.clear();
+        mRecountLayouts.clear();
+
+        Map<SyncTarget, List<Element>> added = new LinkedHashMap<>();
+        Map<SyncTarget, Set<String>> removed = new LinkedHashMap<>();
+        for (Iterator<SyncTarget> iterator = mTargets.iterator(); iterator.hasNext(); ) {
+            SyncTarget target = iterator.next();
+            PsiClass psiClass = target.classPointer.getElement();
+            if (psiClass == null) {
+                iterator.remove();
+                continue;
+            }
+
+            Set<String> addedIds = new LinkedHashSet<>();
+            Set<String> removedIds = new LinkedHashSet<>();
+            if (containsAny(target.watchedLayouts, recountLayouts)) {
+                Map<String, Integer> oldCounts = target.idCounts;
+                recount(target, psiClass);
+                for (String id : target.idCounts.keySet()) {
+                    if (!oldCounts.containsKey(id)) addedIds.add(id);
+                }
+                for (String id : oldCounts.keySet()) {
+                    if (!target.idCounts.containsKey(id)) removedIds.add(id);
+                }
+            } else {
+                applyDeltas(target, deltas, entries, addedIds, removedIds);
+            }
+            if (addedIds.isEmpty() && removedIds.isEmpty()) {
+                continue;
+            }
+
+            // 已经绑定过的 id 不再重复生成，消失的 id 只提醒类中确实绑定过的
+            Set<String> boundIds = Utils.findBoundIds(psiClass).get(Utils.BIND_VIEW);
+            addedIds.removeAll(boundIds);
+            removedIds.retainAll(boundIds);
+            List<Element> elements = new ArrayList<>();
+            for (String id : addedIds) {
+                LayoutIdEntry entry = target.idEntries.get(id);
+                elements.add(entry != null ? Element.fromEntry(entry) : new Element("View", "@+id/" + id));
+            }
+            if (!elements.isEmpty()) {
+                added.put(target, elements);
+            }
+            if (!removedIds.isEmpty()) {
+                removed.put(target, removedIds);
+            }
+        }
+        updateWatchedLayouts();
+
+        if (!added.isEmpty()) {
+            WriteCommandAction.writeCommandAction(mProject).withName(COMMAND_NAME).run(() -> {
+                for (Map.Entry<SyncTarget, List<Element>> entry : added.entrySet()) {
+                    PsiClass psiClass = entry.getKey().classPointer.getElement();
+                    if (psiClass == null) {
+                        continue;
+                    }
+                    ViewFieldMethodCreator creator = new ViewFieldMethodCreator(null, psiClass.getContainingFile(),
+                            psiClass, COMMAND_NAME, entry.getValue(), Collections.emptyList());
+                    creator.setBackend(entry.getKey().backend);
+                    creator.generate();
+                }
+            });
+        }
+        for (Map.Entry<SyncTarget, Set<String>> entry : removed.entrySet()) {
+            notifyStaleBindings(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * 提示用户 target 的布局中已经没有 ids，点击通知中的链接后才删除对应的字段、点击方法和 bindViews 语句
+     */
+    private void notifyStaleBindings(SyncTarget target, Set<String> ids) {
+        PsiClass psiClass = target.classPointer.getElement();
+        if (psiClass == null) {
+            return;
+        }
+        String message = psiClass.getName() + " 的布局中已经没有这些 id：" + String.join(", ", ids);
+        Utils.showNotification(mProject, message, NotificationType.INFORMATION,
+                NotificationAction.create("删除失效的绑定", (e, notification) -> {
+                    notification.expire();
+                    removeStaleBindings(target, ids);
+                }));
+    }
+
+    private void removeStaleBindings(SyncTarget target, Set<String> ids) {
+        PsiClass psiClass = target.classPointer.getElement();
+        if (psiClass == null) {
+            return;
+        }
+        // 通知显示之后布局中可能又加回了其中的 id
+        Set<String> staleIds = new LinkedHashSet<>(ids);
+        staleIds.removeAll(target.idCounts.keySet());
+        if (staleIds.isEmpty()) {
+            return;
+        }
+        WriteCommandAction.writeCommandAction(mProject, psiClass.getContainingFile()).withName(COMMAND_NAME).run(() ->
+                new ViewFieldMethodCreator(null, psiClass.getContainingFile(), psiClass, COMMAND_NAME,
+                        Collections.emptyList(), Collections.emptyList()).removeBindings(staleIds));
+    }
+
+    /**
+     * 把增量计入 target 的计数，出现次数从 0 变为正数的 id 是新增的，变为 0 的是删除的
+     */
+    private static void applyDeltas(SyncTarget target, Map<String, Map<String, Integer>> deltas,
+                                    Map<String, LayoutIdEntry> entries, Set<String> addedIds, Set<String> removedIds) {
+        for (Map.Entry<String, Map<String, Integer>> layoutDelta : deltas.entrySet()) {
+            if (!target.watchedLayouts.contains(layoutDelta.getKey())) {
+                continue;
+            }
+            for (Map.Entry<String, Integer> delta : layoutDelta.getValue().entrySet()) {
+                if (delta.getValue() == 0) {
+                    continue;
+                }
+                String id = delta.getKey();
+                int oldCount = target.idCounts.getOrDefault(id, 0);
+                int newCount = oldCount + delta.getValue();
+                if (newCount > 0) {
+                    target.idCounts.put(id, newCount);
+                    if (entries.containsKey(id)) {
+                        target.idEntries.put(id, entries.get(id));
+                    }
+                } else {
+                    target.idCounts.remove(id);
+                    target.idEntries.remove(id);
+                }
+                if (oldCount <= 0 && newCount > 0) {
+                    addedIds.add(id);
+                    removedIds.remove(id);
+                } else if (oldCount > 0 && newCount <= 0) {
+                    removedIds.add(id);
+                    addedIds.remove(id);
+                }
+            }
+        }
+    }
+
+    private static boolean containsAny(Set<String> set, Set<String> candidates) {
+        for (String candidate : candidates) {
+            if (set.contains(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 监听被同步的布局文件的 PSI 变化。before 事件中按旧的 PSI 减去计数，after 事件中按新的
+     * PSI 加上计数，两者的统计范围相同，所以只需要遍历发生变化的标签。父元素级别的
+     * childrenChanged 只在没有收到任何子元素事件时才处理，这时无法确定变化范围，标记整个布局重新统计
+     */
+    private class LayoutChangeListener extends PsiTreeChangeAdapter {
+
+        @Override
+        public void beforeChildRemoval(@NotNull PsiTreeChangeEvent event) {
+            collectChange(event, event.getChild(), -1);
+        }
+
+        @Override
+        public void childAdded(@NotNull PsiTreeChangeEvent event) {
+            collectChange(event, event.getChild(), 1);
+        }
+
+        @Override
+        public void beforeChildReplacement(@NotNull PsiTreeChangeEvent event) {
+            collectChange(event, event.getOldChild(), -1);
+        }
+
+        @Override
+        public void childReplaced(@NotNull PsiTreeChangeEvent event) {
+            collectChange(event, event.getNewChild(), 1);
+        }
+
+        @Override
+        public void beforeChildrenChange(@NotNull PsiTreeChangeEvent event) {
+            if (!event.isGenericChange()) {
+                mChildEventSeen = false;
+            }
+        }
+
+        @Override
+        public void childrenChanged(@NotNull PsiTreeChangeEvent event) {
+            if (!event.isGenericChange() && !mChildEventSeen) {
+                recountLater(event);
+            }
+        }
+
+        @Override
+        public void childMoved(@NotNull PsiTreeChangeEvent event) {
+            mChildEventSeen = true;
+            recountLater(event);
+        }
+
+        private void recountLater(PsiTreeChangeEvent event) {
+            String layoutName = getWatchedLayoutName(event);
+            if (layoutName != null) {
+                mRecountLayouts.add(layoutName);
+                schedule();
+            }
+        }
+
+        private void collectChange(PsiTreeChangeEvent event, PsiElement element, int sign) {
+            mChildEventSeen = true;
+            String layoutName = getWatchedLayoutName(event);
+            if (layoutName == null) {
+                return;
+            }
+            collect(layoutName, element, sign);
+            schedule();
+        }
+
+        private String getWatchedLayoutName(PsiTreeChangeEvent event) {
+            if (mWatchedLayouts.isEmpty()) {
+                return null;
+            }
+            PsiFile file = event.getFile();
+            if (!(file instanceof XmlFile)) {
+                return null;
+            }
+            VirtualFile virtualFile = file.getVirtualFile();
+            if (virtualFile == null || !LayoutIdIndex.isLayoutFile(virtualFile)) {
+                return null;
+            }
+            String layoutName = FileUtil.getNameWithoutExtension(file.getName());
+            return mWatchedLayouts.contains(layoutName) ? layoutName : null;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package util;
+
+import entity.Element;
+import entity.LayoutIdEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 合并同一个布局在各个限定符目录（layout、layout-land 等）下的 id，只依赖 JDK
+ */
+public class LayoutVariants {
+
+    /**
+     * 按 id 合并各变体展开 include 之后的条目，同一个 id 只生成一个 Element。某个 id 没有
+     * 出现在全部变体中时，记录下缺少它的变体目录名
+     *
+     * @param qualifiers 每个变体所在的目录名，与 variantIds 一一对应
+     * @param variantIds 每个变体展开 include 之后的 id 条目
+     */
+    public static List<Element> merge(List<String> qualifiers, List<List<LayoutIdEntry>> variantIds) {
+        Map<String, Element> merged = new LinkedHashMap<>();
+        Map<String, Set<String>> presentIn = new HashMap<>();
+        for (int i = 0; i < qualifiers.size(); i++) {
+            String qualifier = qualifiers.get(i);
+            for (LayoutIdEntry entry : variantIds.get(i)) {
+                Element element = Element.fromEntry(entry);
+                merged.putIfAbsent(element.getId(), element);
+                presentIn.computeIfAbsent(element.getId(), id -> new HashSet<>()).add(qualifier);
+            }
+        }
+
+        List<Element> elements = new ArrayList<>(merged.size());
+        for (Element element : merged.values()) {
+            Set<String> present = presentIn.get(element.getId());
+            if (present.size() < qualifiers.size()) {
+                List<String> missing = new ArrayList<>();
+                for (String qualifier : qualifiers) {
+                    if (!present.contains(qualifier)) {
+                        missing.add(qualifier);
+                    }
+                }
+                element.setMissingVariants(missing);
+            }
+            elements.add(element);
+        }
+        return elements;
+    }
+}
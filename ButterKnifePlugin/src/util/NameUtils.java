@@ -0,0 +1,98 @@
+package util;
+
+import java.util.Locale;
+
+/**
+ * 与命名相关的工具方法，只依赖 JDK，插件和命令行工具都可以使用
+ */
+public class NameUtils {
+
+    private static final String ANDROID_PREFIX = "android:";
+    private static final String ID_PREFIX = "id/";
+
+    public static String firstToUpperCase(String key) {
+        return key.substring(0, 1).toUpperCase(Locale.CHINA) + key.substring(1);
+    }
+
+    /**
+     * 把以 _ 分隔的 id 转换为驼峰形式，如 tv_text 转换为 tvText
+     */
+    public static String toCamelCase(String id) {
+        return toCamelCase(id, false);
+    }
+
+    /**
+     * 一次遍历 id 生成驼峰形式的名称，不拆分字符串。memberPrefix 为 true 时生成 mTvText 形式，
+     * 否则生成 tvText 形式
+     */
+    public static String toCamelCase(String id, boolean memberPrefix) {
+        int length = id.length();
+        char[] chars = new char[length + 1];
+        int count = 0;
+        boolean upperCase = memberPrefix;
+        if (memberPrefix) {
+            chars[count++] = 'm';
+        }
+        for (int i = 0; i < length; i++) {
+            char c = id.charAt(i);
+            if (c == '_') {
+                upperCase = true;
+                continue;
+            }
+            chars[count++] = upperCase ? Character.toUpperCase(c) : c;
+            upperCase = false;
+        }
+        return new String(chars, 0, count);
+    }
+
+    /**
+     * 从 android:id 的值中取出 id 名，支持 @+id/xxx、@id/xxx、@android:id/xxx 等形式，
+     * 格式不正确时返回 null。逐字符匹配，不使用正则表达式
+     */
+    public static String parseId(String value) {
+        int length = value.length();
+        for (int at = value.indexOf('@'); at >= 0; at = value.indexOf('@', at + 1)) {
+            int i = at + 1;
+            if (i < length && value.charAt(i) == '+') {
+                i++;
+            }
+            if (value.regionMatches(true, i, ANDROID_PREFIX, 0, ANDROID_PREFIX.length())) {
+                i += ANDROID_PREFIX.length();
+            }
+            if (!value.regionMatches(true, i, ID_PREFIX, 0, ID_PREFIX.length())) {
+                continue;
+            }
+            i += ID_PREFIX.length();
+            if (i < length && value.indexOf('$', i) < 0) {
+                return value.substring(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 返回类名的最后一段，如 androidx.appcompat.widget.AppCompatTextView 返回 AppCompatTextView。
+     * 没有包名的类名（布局中最常见的 TextView、Button 等）直接返回传入的字符串，不产生新的对象。
+     * 不做全局缓存，避免长时间运行的 IDE 中缓存随打开过的工程不断增长
+     */
+    public static String getSimpleTypeName(String typeName) {
+        int dot = typeName.lastIndexOf('.');
+        return dot < 0 || dot == typeName.length() - 1 ? typeName : typeName.substring(dot + 1);
+    }
+
+    /**
+     * @param layoutValue 布局文件中 include 标签对应的属性值，形如 @layout/layout_view，
+     *                    从中截取出 layout 文件名 layout_view 返回
+     */
+    public static String getLayoutName(String layoutValue) {
+        if (layoutValue == null || layoutValue.isEmpty() || !layoutValue.startsWith("@") || !layoutValue.contains("/"))
+            return null;
+
+        String[] segments = layoutValue.split("/");
+        if (segments.length != 2) {
+            return null;
+        }
+
+        return segments[1];
+    }
+}
@@ -0,0 +1,100 @@
+package util;
+
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.xml.XmlFile;
+import entity.LayoutIdEntry;
+import index.LayoutIdIndex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 插件中的布局来源：在 scope 内按布局名查找 xml 文件，索引可用时从 LayoutIdIndex 读取条目，
+ * 否则遍历 PSI 树。同名布局有多个限定符变体时合并所有变体的条目。一个实例只在一次解析中
+ * 使用，同名布局的查找结果会被记住
+ */
+public class PsiLayoutSource implements IncludeResolver.LayoutSource {
+
+    private final Project mProject;
+    private final GlobalSearchScope mScope;
+    private final Map<String, List<PsiFile>> mFiles = new HashMap<>();
+
+    public PsiLayoutSource(Project project, GlobalSearchScope scope) {
+        mProject = project;
+        mScope = scope;
+    }
+
+    @Override
+    public List<LayoutIdEntry> getEntries(String layoutName) {
+        List<PsiFile> variants = findLayoutFiles(layoutName);
+        if (variants.isEmpty()) {
+            return null;
+        }
+        if (variants.size() == 1) {
+            return getEntries(variants.get(0));
+        }
+
+        // 多个变体时合并条目，同一个 id 只保留一次
+        List<LayoutIdEntry> entries = new ArrayList<>();
+        Set<LayoutIdEntry> seen = new HashSet<>();
+        for (PsiFile variant : variants) {
+            List<LayoutIdEntry> variantEntries = getEntries(variant);
+            if (variantEntries == null) continue;
+            for (LayoutIdEntry entry : variantEntries) {
+                if (seen.add(entry)) {
+                    entries.add(entry);
+                }
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public long getModificationStamp(String layoutName) {
+        List<PsiFile> variants = findLayoutFiles(layoutName);
+        if (variants.isEmpty()) {
+            return -1;
+        }
+        long stamp = 0;
+        for (PsiFile variant : variants) {
+            stamp = 31 * stamp + variant.getModificationStamp();
+        }
+        return stamp;
+    }
+
+    /**
+     * 同一个 module 的 scope 相等，不同 module 中的同名布局分开缓存
+     */
+    @Override
+    public Object getScopeKey() {
+        return mScope;
+    }
+
+    /**
+     * 返回 psiFile 自身的条目（不展开 include）
+     */
+    public List<LayoutIdEntry> getEntries(PsiFile psiFile) {
+        ProgressManager.checkCanceled();
+        VirtualFile virtualFile = psiFile.getVirtualFile();
+        if (virtualFile != null && !DumbService.isDumb(mProject)) {
+            List<LayoutIdEntry> entries = LayoutIdIndex.getEntries(mProject, virtualFile);
+            if (entries != null) {
+                return entries;
+            }
+        }
+        return psiFile instanceof XmlFile ? Utils.collectLayoutEntries((XmlFile) psiFile) : null;
+    }
+
+    private List<PsiFile> findLayoutFiles(String layoutName) {
+        return mFiles.computeIfAbsent(layoutName, name -> LayoutLocator.findLayoutFiles(mProject, name, mScope));
+    }
+}
@@ -0,0 +1,103 @@
+package util;
+
+import entity.LayoutIdEntry;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 不依赖 PSI 的布局扫描器，用 StAX 流式读取布局文件，提取的条目与 Utils.collectLayoutEntries
+ * 完全一致，供命令行批量生成使用
+ */
+public class StaxLayoutScanner {
+
+    /**
+     * XMLInputFactory 不保证线程安全，每个线程使用自己的实例
+     */
+    private static final ThreadLocal<XMLInputFactory> FACTORY = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // 与 PSI 中按 android:id 取属性一致，只比较前缀，不解析命名空间 URI
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    });
+
+    /**
+     * 提取 file 中所有带 id 的标签以及 include 标签，不展开 include
+     */
+    public static List<LayoutIdEntry> scan(Path file) throws IOException, XMLStreamException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return scan(in);
+        }
+    }
+
+    public static List<LayoutIdEntry> scan(InputStream in) throws XMLStreamException {
+        List<LayoutIdEntry> entries = new ArrayList<>();
+        XMLStreamReader reader = FACTORY.get().createXMLStreamReader(in);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+
+                String name = reader.getLocalName();
+                String id = null;
+                String layout = null;
+                String aClass = null;
+                String stubLayout = null;
+                String inflatedId = null;
+                for (int i = 0, count = reader.getAttributeCount(); i < count; i++) {
+                    String prefix = reader.getAttributePrefix(i);
+                    String attribute = reader.getAttributeLocalName(i);
+                    if (prefix == null || prefix.isEmpty()) {
+                        if ("layout".equals(attribute)) {
+                            layout = reader.getAttributeValue(i);
+                        } else if ("class".equals(attribute)) {
+                            aClass = reader.getAttributeValue(i);
+                        }
+                    } else if ("android".equals(prefix)) {
+                        if ("id".equals(attribute)) {
+                            id = reader.getAttributeValue(i);
+                        } else if ("layout".equals(attribute)) {
+                            stubLayout = reader.getAttributeValue(i);
+                        } else if ("inflatedId".equals(attribute)) {
+                            inflatedId = reader.getAttributeValue(i);
+                        }
+                    }
+                }
+
+                if ("include".equalsIgnoreCase(name)) {
+                    String layoutName = NameUtils.getLayoutName(layout);
+                    if (layoutName != null) {
+                        entries.add(new LayoutIdEntry(id, name, layoutName));
+                        continue;
+                    }
+                }
+
+                if (id == null) continue;
+
+                if (LayoutIdEntry.VIEW_STUB.equals(name)) {
+                    String stubLayoutName = NameUtils.getLayoutName(stubLayout);
+                    if (stubLayoutName != null) {
+                        entries.add(new LayoutIdEntry(id, name, null, stubLayoutName, inflatedId));
+                        continue;
+                    }
+                }
+
+                entries.add(new LayoutIdEntry(id, aClass != null ? aClass : name, null));
+            }
+        } finally {
+            reader.close();
+        }
+        return entries;
+    }
+}
@@ -1,29 +1,58 @@
 package util;
 
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationDisplayType;
+import com.intellij.notification.NotificationGroup;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.popup.Balloon;
 import com.intellij.openapi.ui.popup.JBPopupFactory;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.psi.*;
-import com.intellij.psi.search.FilenameIndex;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.util.PsiTreeUtil;
-import com.intellij.psi.xml.XmlAttribute;
+import com.intellij.psi.util.PsiUtil;
 import com.intellij.psi.xml.XmlFile;
 import com.intellij.psi.xml.XmlTag;
 import com.intellij.ui.JBColor;
 import entity.Element;
-import org.apache.http.util.TextUtils;
+import entity.LayoutIdEntry;
+import latency.LatencyRecorder;
 
 import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 public class Utils {
 
-    public static String firstToUpperCase(String key) {
-        return key.substring(0, 1).toUpperCase(Locale.CHINA) + key.substring(1);
+    public static final String PHASE_INCLUDE_RESOLUTION = "include resolution";
+    public static final String PHASE_ELEMENT_CONSTRUCTION = "Element construction";
+
+    private static final NotificationGroup NOTIFICATION_GROUP =
+            new NotificationGroup("ButterKnifePlugin", NotificationDisplayType.BALLOON, true);
+
+    /**
+     * 在 IDE 右下角显示通知。没有 editor 的场景（实时同步、批量生成）用它代替 showPopupBalloon，
+     * actions 显示为通知中的链接
+     */
+    public static void showNotification(Project project, String message, NotificationType type, AnAction... actions) {
+        Notification notification = NOTIFICATION_GROUP.createNotification(message, type);
+        for (AnAction action : actions) {
+            notification.addAction(action);
+        }
+        notification.notify(project);
     }
 
     public static void showPopupBalloon(Editor editor, String message, int time) {
@@ -41,76 +70,360 @@ public class Utils {
     }
 
     /**
-     * 解析 psiFile 中添加了 id 的组件，将该组件信息封装到 Element 元素中，并存入
-     * elements 集合
+     * 一次性解析同一个布局的所有限定符变体（layout、layout-land 等），按 id 合并成一个
+     * Element 集合。某个 id 没有出现在全部变体中时，记录下缺少它的变体目录名
      */
-    public static List<Element> getIDsFromLayout(PsiFile psiFile, List<Element> elements) {
-        // 遍历一个文件的所有元素
-        analyzeFromXml(psiFile, elements);
+    public static List<Element> getIDsFromLayouts(List<PsiFile> variants, GlobalSearchScope scope, List<Element> elements) {
+        if (variants.isEmpty()) {
+            return elements;
+        }
+
+        LatencyRecorder recorder = LatencyRecorder.getInstance();
+        long start = System.nanoTime();
+        PsiLayoutSource source = new PsiLayoutSource(variants.get(0).getProject(), scope);
+        List<String> qualifiers = new ArrayList<>(variants.size());
+        List<List<LayoutIdEntry>> variantIds = new ArrayList<>(variants.size());
+        for (PsiFile variant : variants) {
+            qualifiers.add(LayoutLocator.getQualifier(variant));
+            variantIds.add(analyzeFromXml(variant, source));
+        }
+        recorder.record(PHASE_INCLUDE_RESOLUTION, start);
+
+        start = System.nanoTime();
+        elements.addAll(LayoutVariants.merge(qualifiers, variantIds));
+        recorder.record(PHASE_ELEMENT_CONSTRUCTION, start);
         return elements;
     }
 
-    private static void analyzeFromXml(PsiFile psiFile, List<Element> elements) {
-        psiFile.accept(new XmlRecursiveElementVisitor() {
+    /**
+     * 提取 xmlFile 中所有带 id 的标签以及 include 标签，不展开 include，供 LayoutIdIndex 建立索引。
+     * ViewStub 只记录它引用的布局名，不展开
+     */
+    public static List<LayoutIdEntry> collectLayoutEntries(XmlFile xmlFile) {
+        List<LayoutIdEntry> entries = new ArrayList<>();
+        xmlFile.accept(new XmlRecursiveElementVisitor() {
             @Override
             public void visitElement(PsiElement element) {
                 super.visitElement(element);
                 if (element instanceof XmlTag) {
-                    XmlTag xmlTag = (XmlTag) element;
-                    String name = xmlTag.getName();
-                    // 如果 xml 中有 include 标签，那就要递归去找 include 布局中的标签
-                    if ("include".equalsIgnoreCase(name)) {
-                        XmlAttribute layout = xmlTag.getAttribute("layout");
-                        Project project = psiFile.getProject();
-                        String layoutName = getLayoutName(layout.getValue()) + ".xml";
-                        PsiFile[] psiFiles = FilenameIndex.getFilesByName(project, layoutName, GlobalSearchScope.allScope(project));
-                        if (psiFiles.length > 0) {
-                            // 开始递归
-                            analyzeFromXml(psiFiles[0], elements);
-                            return;
-                        }
+                    ProgressManager.checkCanceled();
+                    LayoutIdEntry entry = toLayoutEntry((XmlTag) element);
+                    if (entry != null) {
+                        entries.add(entry);
                     }
+                }
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * 单个标签对应的条目：引用了布局的 include 标签、带 id 的 ViewStub（记录引用的布局和 inflatedId）
+     * 或者其它带 id 的标签，都不是时返回 null
+     */
+    public static LayoutIdEntry toLayoutEntry(XmlTag xmlTag) {
+        String name = xmlTag.getName();
+        String id = xmlTag.getAttributeValue("android:id");
+
+        if ("include".equalsIgnoreCase(name)) {
+            String layoutName = NameUtils.getLayoutName(xmlTag.getAttributeValue("layout"));
+            if (layoutName != null) {
+                return new LayoutIdEntry(id, name, layoutName);
+            }
+        }
 
-                    // 没有 include 的一般情况，去找 android:id 属性
-                    XmlAttribute id = xmlTag.getAttribute("android:id", null);
-                    if (id == null) return;
+        if (id == null) return null;
 
-                    String value = id.getValue();
-                    if (value == null) return;
+        if (LayoutIdEntry.VIEW_STUB.equals(name)) {
+            String stubLayout = NameUtils.getLayoutName(xmlTag.getAttributeValue("android:layout"));
+            if (stubLayout != null) {
+                return new LayoutIdEntry(id, name, null, stubLayout, xmlTag.getAttributeValue("android:inflatedId"));
+            }
+        }
 
-                    XmlAttribute aClass = xmlTag.getAttribute("class");
-                    if (aClass != null) {
-                        name = aClass.getValue();
+        String aClass = xmlTag.getAttributeValue("class");
+        if (aClass != null) {
+            name = aClass;
+        }
+        return new LayoutIdEntry(id, name, null);
+    }
+
+    /**
+     * 取出 psiFile 自身的条目，再通过 IncludeResolver 展开其中的 include。被 include 的布局
+     * 按布局名和修改戳缓存，同一个布局被 include 多次时只解析一次，include 循环会被跳过
+     */
+    private static List<LayoutIdEntry> analyzeFromXml(PsiFile psiFile, PsiLayoutSource source) {
+        List<LayoutIdEntry> entries = source.getEntries(psiFile);
+        if (entries == null) {
+            return Collections.emptyList();
+        }
+
+        String layoutName = FileUtil.getNameWithoutExtension(psiFile.getName());
+        return getIncludeResolver(psiFile.getProject()).expand(layoutName, entries, source);
+    }
+
+    public static IncludeResolver getIncludeResolver(Project project) {
+        return ServiceManager.getService(project, IncludeResolver.class);
+    }
+
+    public static final String BIND_VIEW = "BindView";
+    public static final String ON_CLICK = "OnClick";
+    public static final String FIND_VIEW_BY_ID = "findViewById";
+    private static final String SET_ON_CLICK_LISTENER = "setOnClickListener";
+    public static final String INFLATE = "inflate";
+
+    /**
+     * 一次遍历 psiClass，收集 @BindView 和 @OnClick 注解中已经绑定的 R.id.xxx，
+     * 返回的 Map 以注解名（BIND_VIEW、ON_CLICK）为 key，value 为 id 名集合。
+     * findViewById 方式生成的代码也会识别：赋值为 findViewById(R.id.xxx) 的计入 BIND_VIEW，
+     * 对这些变量或 findViewById(R.id.xxx) 的结果调用 setOnClickListener 的计入 ON_CLICK，
+     * 查找后调用 inflate() 的 ViewStub 也计入 BIND_VIEW
+     */
+    public static Map<String, Set<String>> findBoundIds(PsiClass psiClass) {
+        Map<String, Set<String>> boundIds = new HashMap<>();
+        boundIds.put(BIND_VIEW, new HashSet<>());
+        boundIds.put(ON_CLICK, new HashSet<>());
+        // findViewById 方式：被赋值为 findViewById(R.id.xxx) 的变量名到 id 的映射，以及设置了点击监听的变量名
+        Map<String, String> assignedIds = new HashMap<>();
+        List<String> listenerTargets = new ArrayList<>();
+        psiClass.accept(new JavaRecursiveElementWalkingVisitor() {
+            @Override
+            public void visitMethodCallExpression(PsiMethodCallExpression expression) {
+                super.visitMethodCallExpression(expression);
+                String methodName = expression.getMethodExpression().getReferenceName();
+                if (FIND_VIEW_BY_ID.equals(methodName)) {
+                    String id = getFindViewByIdName(expression);
+                    PsiElement parent = PsiUtil.skipParenthesizedExprUp(expression.getParent());
+                    if (parent instanceof PsiTypeCastExpression) {
+                        parent = PsiUtil.skipParenthesizedExprUp(parent.getParent());
+                    }
+                    if (id != null && parent instanceof PsiReferenceExpression
+                            && INFLATE.equals(((PsiReferenceExpression) parent).getReferenceName())) {
+                        // ((ViewStub) root.findViewById(R.id.xxx)).inflate()
+                        boundIds.get(BIND_VIEW).add(id);
+                    } else if (id != null && parent instanceof PsiAssignmentExpression
+                            && ((PsiAssignmentExpression) parent).getLExpression() instanceof PsiReferenceExpression) {
+                        boundIds.get(BIND_VIEW).add(id);
+                        assignedIds.put(((PsiReferenceExpression) ((PsiAssignmentExpression) parent).getLExpression()).getReferenceName(), id);
                     }
+                } else if (SET_ON_CLICK_LISTENER.equals(methodName)) {
+                    PsiExpression qualifier = PsiUtil.skipParenthesizedExprDown(expression.getMethodExpression().getQualifierExpression());
+                    if (qualifier instanceof PsiMethodCallExpression) {
+                        // root.findViewById(R.id.xxx).setOnClickListener(...)
+                        String id = getFindViewByIdName((PsiMethodCallExpression) qualifier);
+                        if (id != null) {
+                            boundIds.get(ON_CLICK).add(id);
+                        }
+                    } else if (qualifier instanceof PsiReferenceExpression) {
+                        listenerTargets.add(((PsiReferenceExpression) qualifier).getReferenceName());
+                    }
+                }
+            }
 
-                    Element newElement = new Element(name, value, xmlTag);
-                    elements.add(newElement);
+            @Override
+            public void visitAnnotation(PsiAnnotation annotation) {
+                super.visitAnnotation(annotation);
+                PsiJavaCodeReferenceElement nameReference = annotation.getNameReferenceElement();
+                Set<String> ids = nameReference == null ? null : boundIds.get(nameReference.getReferenceName());
+                if (ids == null) {
+                    return;
+                }
+                for (PsiNameValuePair pair : annotation.getParameterList().getAttributes()) {
+                    PsiAnnotationMemberValue value = pair.getValue();
+                    if (value instanceof PsiArrayInitializerMemberValue) {
+                        // @OnClick({R.id.a, R.id.b})
+                        for (PsiAnnotationMemberValue initializer : ((PsiArrayInitializerMemberValue) value).getInitializers()) {
+                            addIdReference(initializer, ids);
+                        }
+                    } else {
+                        addIdReference(value, ids);
+                    }
                 }
             }
         });
+        for (String target : listenerTargets) {
+            String id = assignedIds.get(target);
+            if (id != null) {
+                boundIds.get(ON_CLICK).add(id);
+            }
+        }
+        return boundIds;
     }
 
     /**
-     * @param layoutValue 布局文件中 include 标签对应的属性值，形如 @layout/layout_view，
-     *                    从中截取出 layout 文件名 layout_view 返回
+     * expression 形如 findViewById(R.id.xxx) 时返回 xxx，否则返回 null
      */
-    private static String getLayoutName(String layoutValue) {
-        if (TextUtils.isEmpty(layoutValue) || !layoutValue.startsWith("@") || !layoutValue.contains("/"))
+    public static String getFindViewByIdName(PsiMethodCallExpression expression) {
+        if (!FIND_VIEW_BY_ID.equals(expression.getMethodExpression().getReferenceName())) {
             return null;
+        }
+        PsiExpression[] arguments = expression.getArgumentList().getExpressions();
+        return arguments.length == 1 ? getIdReferenceName(arguments[0]) : null;
+    }
+
+    /**
+     * value 为 R.id.xxx 时把 xxx 加入 ids
+     */
+    private static void addIdReference(PsiAnnotationMemberValue value, Set<String> ids) {
+        String id = getIdReferenceName(value);
+        if (id != null) {
+            ids.add(id);
+        }
+    }
 
-        String[] segments = layoutValue.split("/");
-        if (segments.length != 2) {
+    /**
+     * value 形如 R.id.xxx 时返回 xxx，否则返回 null
+     */
+    public static String getIdReferenceName(PsiElement value) {
+        if (!(value instanceof PsiReferenceExpression)) {
             return null;
         }
+        PsiReferenceExpression reference = (PsiReferenceExpression) value;
+        PsiExpression qualifier = reference.getQualifierExpression();
+        if (qualifier instanceof PsiReferenceExpression && "id".equals(((PsiReferenceExpression) qualifier).getReferenceName())) {
+            return reference.getReferenceName();
+        }
+        return null;
+    }
+
+    /**
+     * 按出现顺序返回 psiClass 中所有 R.layout.xxx 引用的布局名，不包含重复项。内部类和匿名类
+     * （如 Activity 中的 Adapter）使用的是各自的布局，不计算在内。值是引用直接解析到的布局文件
+     * （安装了 Android 插件时），解析不到时为空集合，由调用方按布局名在索引中查找
+     */
+    public static Map<String, List<PsiFile>> findLayoutReferences(PsiClass psiClass) {
+        Map<String, List<PsiFile>> layouts = new LinkedHashMap<>();
+        psiClass.accept(new JavaRecursiveElementWalkingVisitor() {
+            @Override
+            public void visitClass(PsiClass aClass) {
+                if (aClass == psiClass) {
+                    super.visitClass(aClass);
+                }
+            }
+
+            @Override
+            public void visitReferenceExpression(PsiReferenceExpression expression) {
+                super.visitReferenceExpression(expression);
+                PsiExpression qualifier = expression.getQualifierExpression();
+                if (qualifier instanceof PsiReferenceExpression && isLayoutClassReference((PsiReferenceExpression) qualifier)) {
+                    List<PsiFile> files = layouts.computeIfAbsent(expression.getReferenceName(), name -> new ArrayList<>());
+                    if (files.isEmpty()) {
+                        files.addAll(resolveLayoutFiles(expression));
+                    }
+                }
+            }
+        });
+        return layouts;
+    }
+
+    /**
+     * 返回 R.layout.xxx 引用解析到的 xml 文件。没有 Android 插件时引用解析到 R 类的字段或者解析不到，
+     * 返回空集合
+     */
+    private static List<PsiFile> resolveLayoutFiles(PsiReferenceExpression expression) {
+        List<PsiFile> files = new ArrayList<>();
+        for (ResolveResult result : expression.multiResolve(false)) {
+            PsiElement element = result.getElement();
+            if (element instanceof XmlFile) {
+                files.add((PsiFile) element);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * expression 是否为 R.layout 或 com.xxx.R.layout
+     */
+    private static boolean isLayoutClassReference(PsiReferenceExpression expression) {
+        if (!"layout".equals(expression.getReferenceName())) {
+            return false;
+        }
+        PsiExpression qualifier = expression.getQualifierExpression();
+        return qualifier instanceof PsiReferenceExpression && "R".equals(((PsiReferenceExpression) qualifier).getReferenceName());
+    }
+
+    /**
+     * psiClass 是否为 Activity、Fragment 或 Adapter。只比较父类的名字，所以即使没有
+     * Android SDK、父类无法解析时也能判断
+     */
+    public static boolean isScreenClass(PsiClass psiClass) {
+        Set<PsiClass> visited = new HashSet<>();
+        for (PsiClass current = psiClass; current != null && visited.add(current); current = current.getSuperClass()) {
+            for (PsiClassType type : current.getExtendsListTypes()) {
+                String className = type.getClassName();
+                if (className != null && (className.endsWith("Activity") || className.endsWith("Fragment")
+                        || className.endsWith("Adapter"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * psiClass 是否为 Activity 或 Dialog，即可以通过 getWindow().getDecorView() 取得根布局。
+     * 和 isScreenClass 一样只比较父类的名字
+     */
+    public static boolean isWindowClass(PsiClass psiClass) {
+        Set<PsiClass> visited = new HashSet<>();
+        for (PsiClass current = psiClass; current != null && visited.add(current); current = current.getSuperClass()) {
+            for (PsiClassType type : current.getExtendsListTypes()) {
+                String className = type.getClassName();
+                if (className != null && (className.endsWith("Activity") || className.endsWith("Dialog"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * psiClass 继承自 RecyclerView.Adapter 时返回对应的 ViewHolder 类名，如
+     * androidx.recyclerview.widget.RecyclerView.ViewHolder，否则返回 null。和 isScreenClass 一样
+     * 只比较父类的名字，父类无法解析时返回 RecyclerView.ViewHolder，由导入补全
+     */
+    public static String getViewHolderSuperClass(PsiClass psiClass) {
+        Set<PsiClass> visited = new HashSet<>();
+        for (PsiClass current = psiClass; current != null && visited.add(current); current = current.getSuperClass()) {
+            for (PsiClassType type : current.getExtendsListTypes()) {
+                String adapterName = type.rawType().getCanonicalText();
+                if (adapterName.endsWith(RECYCLER_VIEW_ADAPTER)) {
+                    return adapterName.substring(0, adapterName.length() - RECYCLER_VIEW_ADAPTER.length())
+                            + RECYCLER_VIEW_HOLDER;
+                }
+            }
+        }
+        return null;
+    }
 
-        return segments[1];
+    private static final String RECYCLER_VIEW_ADAPTER = "RecyclerView.Adapter";
+    private static final String RECYCLER_VIEW_HOLDER = "RecyclerView.ViewHolder";
+
+    /**
+     * 从 Adapter 中 List&lt;User&gt; 这类字段推断列表项的类型，用作 ViewHolder.bind 的参数类型，
+     * 找不到时返回 Object
+     */
+    public static String findItemTypeName(PsiClass adapterClass) {
+        for (PsiField field : adapterClass.getAllFields()) {
+            if (!(field.getType() instanceof PsiClassType)) {
+                continue;
+            }
+            PsiClassType type = (PsiClassType) field.getType();
+            PsiType[] parameters = type.getParameters();
+            if (parameters.length == 1 && LIST_TYPE_NAMES.contains(type.getClassName())
+                    && !(parameters[0] instanceof PsiWildcardType)) {
+                return parameters[0].getPresentableText();
+            }
+        }
+        return "Object";
     }
 
+    private static final Set<String> LIST_TYPE_NAMES = new HashSet<>(Arrays.asList("List", "ArrayList", "LinkedList", "Collection"));
+
     /**
-     * 根据当前文件获取对应的 psiClass 文件
+     * 返回 psiFile 中 offset 处所在的类，可以在后台读操作中调用
      */
-    public static PsiClass getTargetClass(Editor editor, PsiFile psiFile) {
-        int offset = editor.getCaretModel().getOffset();
+    public static PsiClass getTargetClass(PsiFile psiFile, int offset) {
         PsiElement element = psiFile.findElementAt(offset);
         if (element == null) {
             return null;
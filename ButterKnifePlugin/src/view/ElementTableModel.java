@@ -0,0 +1,113 @@
+package view;
+
+import entity.Element;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.List;
+
+/**
+ * 对话框中表格的数据模型，直接读写 Element 集合。表格只会为可见的行调用渲染器，
+ * 勾选、改名都在原来的 Element 上修改，不需要重建任何组件
+ */
+public class ElementTableModel extends AbstractTableModel {
+
+    public static final int COLUMN_FIELD = 0;
+    public static final int COLUMN_ID = 1;
+    public static final int COLUMN_CLICK = 2;
+    public static final int COLUMN_FIELD_NAME = 3;
+    public static final int COLUMN_LAZY = 4;
+
+    private static final String[] COLUMN_NAMES = {"ViewWidget", "ViewId", "OnClick", "ViewFiled", "Lazy"};
+
+    private final List<Element> mElements;
+
+    public ElementTableModel(List<Element> elements) {
+        mElements = elements;
+    }
+
+    public Element getElement(int row) {
+        return mElements.get(row);
+    }
+
+    @Override
+    public int getRowCount() {
+        return mElements.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == COLUMN_FIELD || column == COLUMN_CLICK || column == COLUMN_LAZY ? Boolean.class : String.class;
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        switch (column) {
+            case COLUMN_FIELD:
+                return true;
+            case COLUMN_CLICK:
+                // ViewStub inflate 之后就不在视图树中了，不能设置点击事件
+                return !mElements.get(row).isStub();
+            case COLUMN_FIELD_NAME:
+                // 不生成字段时字段名不可编辑
+                return mElements.get(row).isCreateField();
+            case COLUMN_LAZY:
+                // ViewStub 总是在第一次使用时 inflate
+                return mElements.get(row).isCreateField() && !mElements.get(row).isStub();
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Element element = mElements.get(row);
+        switch (column) {
+            case COLUMN_FIELD:
+                return element.isCreateField();
+            case COLUMN_ID:
+                return element.getId();
+            case COLUMN_CLICK:
+                return element.isCreateClickMethod();
+            case COLUMN_FIELD_NAME:
+                return element.getFieldName();
+            case COLUMN_LAZY:
+                return element.isLazy() || element.isStub();
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public void setValueAt(Object value, int row, int column) {
+        Element element = mElements.get(row);
+        switch (column) {
+            case COLUMN_FIELD:
+                element.setCreateField((Boolean) value);
+                // 字段名、延迟查找两列的可编辑状态随之变化
+                fireTableRowsUpdated(row, row);
+                break;
+            case COLUMN_CLICK:
+                element.setCreateClickMethod((Boolean) value);
+                fireTableCellUpdated(row, column);
+                break;
+            case COLUMN_FIELD_NAME:
+                element.setFieldName((String) value);
+                fireTableCellUpdated(row, column);
+                break;
+            case COLUMN_LAZY:
+                element.setLazy((Boolean) value);
+                fireTableCellUpdated(row, column);
+                break;
+        }
+    }
+}
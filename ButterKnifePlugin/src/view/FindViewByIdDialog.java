@@ -1,50 +1,75 @@
 package view;
 
-import com.intellij.openapi.editor.Editor;
+import com.intellij.ide.util.PropertiesComponent;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.PsiClass;
-import com.intellij.psi.PsiFile;
+import com.intellij.ui.DocumentAdapter;
+import com.intellij.ui.SearchTextField;
 import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.table.JBTable;
+import entity.BindingSession;
 import entity.Element;
+import org.jetbrains.annotations.NotNull;
+import util.ElementSearchIndex;
+import util.LayoutSyncService;
+import util.Utils;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableRowSorter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Set;
 
-public class FindViewByIdDialog extends JFrame implements ActionListener, SelectionItem.EnableActionListener {
+public class FindViewByIdDialog extends JFrame implements ActionListener {
+
+    /**
+     * 记住用户上次选择的生成方式
+     */
+    private static final String BACKEND_KEY = "ButterKnifePlugin.backend";
 
     private String mTitle = "FindViewByIdDialog";
+    // 本次执行的上下文，只保存 PSI 指针，对话框关闭时释放
+    private BindingSession mSession;
     private Project mProject;
-    private Editor mEditor;
-    private String mSelectedText;
     private List<Element> mElements;
-    // 获取当前文件
-    private PsiFile mPsiFile;
-    // 获取class
-    private PsiClass mClass;
 
 
     // 标签JPanel
-    private JPanel mPanelTitle = new JPanel();
-    private JLabel mTitleId = new JLabel("ViewId");
-    private JLabel mTitleClick = new JLabel("OnClick");
-    private JLabel mTitleField = new JLabel("ViewFiled");
+    private JPanel mPanelTitle = new JPanel(new FlowLayout(FlowLayout.LEFT));
+
+    // 过滤输入框，每次输入都按 id、字段名、控件类型过滤表格中的行
+    private SearchTextField mFilterField = new SearchTextField(false);
+    private ElementSearchIndex mSearchIndex;
+    // 当前过滤结果对应的模型行
+    private BitSet mVisibleRows;
 
-    // 内容JPanel
-    private JPanel mContentJPanel = new JPanel();
-    private GridBagLayout mContentLayout = new GridBagLayout();
-    private GridBagConstraints mContentConstraints = new GridBagConstraints();
+    // 内容表格，只有可见的行才会被渲染
+    private ElementTableModel mTableModel;
+    private JBTable mTable;
+    private TableRowSorter<ElementTableModel> mRowSorter;
     // 内容JBScrollPane滚动
     private JBScrollPane jScrollPane;
 
     // 底部JPanel
     // LayoutInflater JPanel
     private JPanel mPanelInflater = new JPanel(new FlowLayout(FlowLayout.LEFT));
-    // 是否全选
+    // 是否全选，只作用于当前过滤出的行
     private JCheckBox mCheckAll = new JCheckBox("ViewWidget");
+    private JCheckBox mCheckAllClick = new JCheckBox("OnClick");
+    // 是否把所有点击事件合并到一个 @OnClick 方法中
+    private JCheckBox mCheckMergeClick = new JCheckBox("合并 OnClick");
+    private JCheckBox mCheckSync = new JCheckBox("布局变化时自动同步");
+    // 生成 unbindViews()，在 onDestroyView/onDestroy 中释放控件引用
+    private JCheckBox mCheckUnbind = new JCheckBox("生成 unbindViews");
+    // 在 Adapter 中生成列表项的 ViewHolder 内部类
+    private JCheckBox mCheckViewHolder = new JCheckBox("生成 ViewHolder");
+    private JComboBox<ViewFieldMethodCreator.Backend> mBackendBox = new JComboBox<>(ViewFieldMethodCreator.Backend.values());
     // 确定、取消JPanel
     private JPanel mPanelButtonRight = new JPanel();
     private JButton mButtonConfirm = new JButton("确定");
@@ -55,13 +80,10 @@ public class FindViewByIdDialog extends JFrame implements ActionListener, Select
     // GridBagConstraints用来控制添加进的组件的显示位置
     private GridBagConstraints mConstraints = new GridBagConstraints();
 
-    public FindViewByIdDialog(Editor editor, Project project, PsiFile psiFile, PsiClass psiClass, List<Element> elements, String selectedText) {
-        mEditor = editor;
-        mProject = project;
-        mSelectedText = selectedText;
-        mElements = elements;
-        mPsiFile = psiFile;
-        mClass = psiClass;
+    public FindViewByIdDialog(BindingSession session) {
+        mSession = session;
+        mProject = session.getProject();
+        mElements = session.getElements();
         initTopPanel();
         initExist();
         initContentPanel();
@@ -75,46 +97,41 @@ public class FindViewByIdDialog extends JFrame implements ActionListener, Select
      * 判断onclick是否写入
      */
     private void initExist() {
+        // 已经绑定的 id 在后台创建会话时收集好，这里每个 id 只需一次哈希查找
+        Set<String> boundFields = mSession.getBoundIds(Utils.BIND_VIEW);
+        Set<String> boundClicks = mSession.getBoundIds(Utils.ON_CLICK);
+
         // 判断是否全选  记录当前可用的个数
         int mCurrentAbleSize = 0;
-        // 判断是否已存在的变量
-        boolean isFdExist = false;
-
         for (Element element : mElements) {
-            // 判断ViewById是否存在
-            if (mClass.getText().contains("@ViewById(" + element.getFullIdString() + ")")) {
-                isFdExist = true;
-            } else {
-                isFdExist = false;
-            }
-
             // 如果当前没有该属性注解存在
-            if (!isFdExist) {
+            if (!boundFields.contains(element.getId())) {
                 mCurrentAbleSize++;
                 element.setCreateField(true);
             } else {
                 element.setCreateField(false);
             }
-
-            mCheckAll.setSelected(mCurrentAbleSize == mElements.size());
-            mCheckAll.addActionListener(this);
+            // 已经有 @OnClick 的 id 不再生成点击方法
+            if (boundClicks.contains(element.getId())) {
+                element.setCreateClickMethod(false);
+            }
         }
+
+        mCheckAll.setSelected(mCurrentAbleSize == mElements.size());
+        mCheckAll.addActionListener(this);
+        mCheckAllClick.addActionListener(this);
     }
 
     /**
      * 添加头部
      */
     private void initTopPanel() {
-        mPanelTitle.setLayout(new GridLayout(1, 4, 10, 10));
         mPanelTitle.setBorder(new EmptyBorder(5, 10, 5, 10));
-        mTitleId.setHorizontalAlignment(JLabel.LEFT);
-        mTitleClick.setHorizontalAlignment(JLabel.LEFT);
-        mTitleField.setHorizontalAlignment(JLabel.LEFT);
         // 添加到JPanel
         mPanelTitle.add(mCheckAll);
-        mPanelTitle.add(mTitleId);
-        mPanelTitle.add(mTitleClick);
-        mPanelTitle.add(mTitleField);
+        mPanelTitle.add(mCheckAllClick);
+        mPanelTitle.add(new JLabel("过滤"));
+        mPanelTitle.add(mFilterField);
         mPanelTitle.setSize(720, 30);
         // 添加到JFrame
         getContentPane().add(mPanelTitle, 0);
@@ -127,6 +144,21 @@ public class FindViewByIdDialog extends JFrame implements ActionListener, Select
         // 添加监听
         mButtonConfirm.addActionListener(this);
         mButtonCancel.addActionListener(this);
+        // 左边
+        mPanelInflater.add(new JLabel("生成方式"));
+        PsiClass psiClass = mSession.getTargetClass();
+        mBackendBox.setSelectedItem(loadBackend());
+        mPanelInflater.add(mBackendBox);
+        // 光标在 RecyclerView.Adapter 中时默认生成 ViewHolder，ViewHolder 总是使用 findViewById
+        mCheckViewHolder.setSelected(psiClass != null && Utils.getViewHolderSuperClass(psiClass) != null);
+        mCheckViewHolder.addActionListener(e -> updateViewHolderMode());
+        mPanelInflater.add(mCheckViewHolder);
+        mPanelInflater.add(mCheckMergeClick);
+        mCheckSync.setSelected(psiClass != null && LayoutSyncService.getInstance(mProject).isWatching(psiClass));
+        mPanelInflater.add(mCheckSync);
+        mCheckUnbind.setSelected(psiClass != null && ViewFieldMethodCreator.findUnbindViewsMethod(psiClass) != null);
+        mPanelInflater.add(mCheckUnbind);
+        updateViewHolderMode();
         // 右边
         mPanelButtonRight.add(mButtonConfirm);
         mPanelButtonRight.add(mButtonCancel);
@@ -136,35 +168,82 @@ public class FindViewByIdDialog extends JFrame implements ActionListener, Select
     }
 
     /**
-     * 解析mElements，并添加到JPanel
+     * 用 mElements 创建表格模型，并添加到JFrame
      */
     private void initContentPanel() {
-        mContentJPanel.removeAll();
-        // 设置内容
-        for (int i = 0; i < mElements.size(); i++) {
-            Element mElement = mElements.get(i);
-            SelectionItem itemJPanel = new SelectionItem(new GridLayout(1, 4, 10, 10),
-                    new EmptyBorder(5, 10, 5, 10),
-                    new JCheckBox(mElement.getFieldName()),
-                    new JLabel(mElement.getId()),
-                    new JCheckBox(),
-                    new JTextField(mElement.getFieldName()),
-                    mElement);
-            // 监听
-            itemJPanel.setEnableActionListener(this);
-            itemJPanel.setClickActionListener(clickCheckBox -> mElement.setCreateClickMethod(clickCheckBox.isSelected()));
-            itemJPanel.setFieldFocusListener(fieldJTextField -> mElement.setFieldName(fieldJTextField.getText()));
-            mContentJPanel.add(itemJPanel);
-            mContentConstraints.fill = GridBagConstraints.HORIZONTAL;
-            mContentConstraints.gridwidth = 0;
-            mContentConstraints.gridx = 0;
-            mContentConstraints.gridy = i;
-            mContentConstraints.weightx = 1;
-            mContentLayout.setConstraints(itemJPanel, mContentConstraints);
+        mTableModel = new ElementTableModel(mElements);
+        mSearchIndex = new ElementSearchIndex(mElements);
+        mVisibleRows = mSearchIndex.search(null);
+        mTableModel.addTableModelListener(e -> {
+            // 字段名修改后只更新过滤索引中变化的行，并按新的索引重新过滤。这里还在单元格编辑器
+            // 提交的过程中，过滤会停止编辑，所以放到之后执行
+            if (e.getColumn() == ElementTableModel.COLUMN_FIELD_NAME) {
+                if (e.getFirstRow() < 0 || e.getLastRow() >= mElements.size()) {
+                    mSearchIndex = new ElementSearchIndex(mElements);
+                } else {
+                    for (int row = e.getFirstRow(); row <= e.getLastRow(); row++) {
+                        mSearchIndex.update(row, mElements.get(row));
+                    }
+                }
+                SwingUtilities.invokeLater(this::applyFilter);
+            }
+            // 勾选或取消某一行时更新全选框
+            updateAllSelectCb();
+        });
+
+        mTable = new JBTable(mTableModel);
+        mRowSorter = new TableRowSorter<>(mTableModel);
+        for (int i = 0; i < mTableModel.getColumnCount(); i++) {
+            // 保持布局文件中的顺序
+            mRowSorter.setSortable(i, false);
         }
-        mContentJPanel.setLayout(mContentLayout);
-        jScrollPane = new JBScrollPane(mContentJPanel);
-        jScrollPane.revalidate();
+        mRowSorter.setRowFilter(new RowFilter<ElementTableModel, Integer>() {
+            @Override
+            public boolean include(Entry<? extends ElementTableModel, ? extends Integer> entry) {
+                return mVisibleRows.get(entry.getIdentifier());
+            }
+        });
+        mTable.setRowSorter(mRowSorter);
+        mFilterField.addDocumentListener(new DocumentAdapter() {
+            @Override
+            protected void textChanged(@NotNull DocumentEvent e) {
+                applyFilter();
+            }
+        });
+        mTable.setRowHeight(30);
+        mTable.setShowGrid(false);
+        mTable.getColumnModel().getColumn(ElementTableModel.COLUMN_ID).setCellRenderer(new DefaultTableCellRenderer() {
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                           boolean hasFocus, int row, int column) {
+                super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+                Element element = mTableModel.getElement(table.convertRowIndexToModel(row));
+                setEnabled(element.isCreateField());
+                if (element.isStub()) {
+                    // ViewStub 的布局在生成时才解析，这里只显示布局名
+                    setToolTipText("ViewStub，第一次使用时 inflate 布局 " + element.getStubLayout());
+                } else if (element.isInAllVariants()) {
+                    setToolTipText(null);
+                } else {
+                    // 标记只在部分布局变体中存在的 id
+                    setText(element.getId() + " *");
+                    setToolTipText("以下布局变体中没有该 id：" + String.join(", ", element.getMissingVariants()));
+                }
+                return this;
+            }
+        });
+        mTable.getColumnModel().getColumn(ElementTableModel.COLUMN_FIELD_NAME).setCellRenderer(new DefaultTableCellRenderer() {
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                           boolean hasFocus, int row, int column) {
+                super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+                setEnabled(mTableModel.getElement(table.convertRowIndexToModel(row)).isCreateField());
+                return this;
+            }
+        });
+
+        jScrollPane = new JBScrollPane(mTable);
+        updateAllSelectCb();
         // 添加到JFrame
         getContentPane().add(jScrollPane, 1);
     }
@@ -237,6 +316,8 @@ public class FindViewByIdDialog extends JFrame implements ActionListener, Select
         setLocationRelativeTo(null);
         // 显示最前
         setAlwaysOnTop(true);
+        // 点击关闭按钮时也要 dispose，释放会话
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
     }
 
     /**
@@ -247,26 +328,50 @@ public class FindViewByIdDialog extends JFrame implements ActionListener, Select
         dispose();
     }
 
+    @Override
+    public void dispose() {
+        super.dispose();
+        mSession.release();
+    }
+
     @Override
     public void actionPerformed(ActionEvent e) {
         switch (e.getActionCommand()) {
             case "确定":
-                cancelDialog();
+                // 提交正在编辑的字段名
+                if (mTable.isEditing()) {
+                    mTable.getCellEditor().stopCellEditing();
+                }
+                setVisible(false);
                 //根据用户的选择来生成代码，生成activity中要插入的代码
                 setCreator();
+                cancelDialog();
                 break;
             case "取消":
                 cancelDialog();
                 break;
             case "ViewWidget":
                 // 刷新
-                for (Element mElement : mElements) {
-                    mElement.setCreateField(mCheckAll.isSelected());
+                // 只修改当前过滤出的行
+                if (mTable.isEditing()) {
+                    mTable.getCellEditor().cancelCellEditing();
+                }
+                for (int row = mVisibleRows.nextSetBit(0); row >= 0; row = mVisibleRows.nextSetBit(row + 1)) {
+                    mElements.get(row).setCreateField(mCheckAll.isSelected());
                 }
-                remove(jScrollPane);
-                initContentPanel();
-                setConstraints();
-                revalidate();
+                mTableModel.fireTableDataChanged();
+                break;
+            case "OnClick":
+                if (mTable.isEditing()) {
+                    mTable.getCellEditor().cancelCellEditing();
+                }
+                for (int row = mVisibleRows.nextSetBit(0); row >= 0; row = mVisibleRows.nextSetBit(row + 1)) {
+                    // 和表格中一样，ViewStub 不能设置点击事件
+                    if (!mElements.get(row).isStub()) {
+                        mElements.get(row).setCreateClickMethod(mCheckAllClick.isSelected());
+                    }
+                }
+                mTableModel.fireTableDataChanged();
                 break;
         }
     }
@@ -275,28 +380,75 @@ public class FindViewByIdDialog extends JFrame implements ActionListener, Select
      * 生成
      */
     private void setCreator() {
-        new ViewFieldMethodCreator(this, mEditor, mPsiFile, mClass,
-                "Generate Injections", mElements, mSelectedText)
-                .execute();
+        PsiClass psiClass = mSession.getTargetClass();
+        if (psiClass == null) {
+            // 对话框打开期间类被删除了
+            return;
+        }
+        ViewFieldMethodCreator creator = new ViewFieldMethodCreator(mSession.getEditor(), psiClass.getContainingFile(),
+                psiClass, "Generate Injections", mElements, mSession.getLayoutNames());
+        ViewFieldMethodCreator.Backend backend = (ViewFieldMethodCreator.Backend) mBackendBox.getSelectedItem();
+        PropertiesComponent.getInstance(mProject).setValue(BACKEND_KEY, backend.name());
+        creator.setMergeClickMethods(mCheckMergeClick.isSelected());
+        creator.setBackend(backend);
+        creator.setViewHolderMode(mCheckViewHolder.isSelected());
+        creator.setGenerateUnbind(mCheckUnbind.isSelected());
+        creator.execute();
+        LayoutSyncService syncService = LayoutSyncService.getInstance(mProject);
+        if (mCheckSync.isSelected() && !mCheckViewHolder.isSelected()) {
+            syncService.watch(psiClass, mSession.getLayoutNames(), backend);
+        } else {
+            syncService.unwatch(psiClass);
+        }
+    }
+
+    /**
+     * 生成 ViewHolder 时生成方式、自动同步和 unbindViews 都不适用
+     */
+    private void updateViewHolderMode() {
+        boolean viewHolder = mCheckViewHolder.isSelected();
+        mBackendBox.setEnabled(!viewHolder);
+        mCheckSync.setEnabled(!viewHolder);
+        mCheckUnbind.setEnabled(!viewHolder);
+    }
+
+    private ViewFieldMethodCreator.Backend loadBackend() {
+        String value = PropertiesComponent.getInstance(mProject).getValue(BACKEND_KEY);
+        for (ViewFieldMethodCreator.Backend backend : ViewFieldMethodCreator.Backend.values()) {
+            if (backend.name().equals(value)) {
+                return backend;
+            }
+        }
+        return ViewFieldMethodCreator.Backend.BUTTERKNIFE;
     }
 
     /**
-     * 更新所有选中的CheckBox
+     * 按过滤框中的文本重新计算可见的行
+     */
+    private void applyFilter() {
+        if (mTable.isEditing()) {
+            mTable.getCellEditor().stopCellEditing();
+        }
+        mVisibleRows = mSearchIndex.search(mFilterField.getText());
+        mRowSorter.allRowsChanged();
+        updateAllSelectCb();
+    }
+
+    /**
+     * 更新所有选中的CheckBox，只统计当前过滤出的行
      */
     private void updateAllSelectCb() {
         boolean isAllSelect = true;
-        for (Element element : mElements) {
-            if (!element.isCreateField()) {
-                isAllSelect = false;
+        boolean isAllClick = true;
+        for (int row = mVisibleRows.nextSetBit(0); row >= 0; row = mVisibleRows.nextSetBit(row + 1)) {
+            Element element = mElements.get(row);
+            isAllSelect &= element.isCreateField();
+            isAllClick &= element.isCreateClickMethod();
+            if (!isAllSelect && !isAllClick) {
                 break;
             }
         }
         mCheckAll.setSelected(isAllSelect);
-    }
-
-    @Override
-    public void onSetEnable(JCheckBox enableCheckBox, Element element) {
-        element.setCreateField(enableCheckBox.isSelected());
-        updateAllSelectCb();
+        mCheckAllClick.setSelected(isAllClick);
     }
 }
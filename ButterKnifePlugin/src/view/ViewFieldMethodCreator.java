@@ -1,63 +1,804 @@
 package view;
 
-import com.intellij.codeInsight.actions.ReformatCodeProcessor;
+import com.intellij.notification.NotificationType;
 import com.intellij.openapi.command.WriteCommandAction.Simple;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.*;
+import com.intellij.psi.codeStyle.CodeStyleManager;
 import com.intellij.psi.codeStyle.JavaCodeStyleManager;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.PsiUtil;
 import entity.Element;
+import entity.LayoutIdEntry;
+import latency.LatencyRecorder;
+import util.BindingRenderer;
+import util.LayoutLocator;
+import util.NameUtils;
+import util.PsiLayoutSource;
 import util.Utils;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 /**
  * 用来生成我们需要的控件注入与事件注入代码
  */
 public class ViewFieldMethodCreator extends Simple {
 
+    public static final String PHASE_PSI_GENERATION = "PSI generation";
+    public static final String PHASE_REFORMAT = "reformat";
+
+    private static final String MERGED_CLICK_METHOD_NAME = "onViewClicked";
+
+    private static final String BUTTERKNIFE_CLASS_NAME = "ButterKnife";
+    private static final String BUTTERKNIFE_BIND_METHOD_NAME = "bind";
+
+    /**
+     * 按顺序查找的生命周期方法，找到的第一个中调用 unbindViews()
+     */
+    private static final String[] UNBIND_HOOK_METHOD_NAMES = {"onDestroyView", "onDestroy"};
+
+    /**
+     * 生成的成员中使用了无法解析的简单类名时，按顺序在这些包中查找并导入
+     */
+    private static final String[] IMPORT_CANDIDATE_PACKAGES = {
+            "butterknife", "android.widget", "android.view", "android.webkit"
+    };
+
+    /**
+     * 生成成员的方式
+     */
+    public enum GenerationMode {
+        /**
+         * 每个字段、方法单独解析并插入一次，每次插入都会触发 PSI 变化事件
+         */
+        PER_MEMBER,
+        /**
+         * 所有成员拼接成一段文本，只解析一次，并一次性插入到类中
+         */
+        SINGLE_PASS
+    }
+
+    /**
+     * 生成绑定代码的方式
+     */
+    public enum Backend {
+        /**
+         * &#64;BindView 字段和 &#64;OnClick 方法，运行时由 ButterKnife 绑定
+         */
+        BUTTERKNIFE("ButterKnife"),
+        /**
+         * 普通字段，在 bindViews(View root) 中用 findViewById 赋值并设置点击监听，
+         * 运行时不需要 ButterKnife，编译时也不需要注解处理
+         */
+        FIND_VIEW_BY_ID("findViewById");
+
+        private final String mDisplayName;
+
+        Backend(String displayName) {
+            mDisplayName = displayName;
+        }
+
+        @Override
+        public String toString() {
+            return mDisplayName;
+        }
+    }
+
+    /**
+     * bindViews 的根布局参数名
+     */
+    private static final String ROOT_PARAMETER_NAME = "root";
 
-    private FindViewByIdDialog mDialog;
     private Editor mEditor;
     private PsiFile mFile;
     private Project mProject;
     private PsiClass mClass;
     private List<Element> mElements;
     private PsiElementFactory mFactory;
+    private GenerationMode mGenerationMode = GenerationMode.SINGLE_PASS;
+    /**
+     * 是否格式化插入的范围，性能测试中关闭后可以单独测量格式化的耗时
+     */
+    private boolean mReformat = true;
+    /**
+     * 是否把所有点击事件合并到一个 @OnClick({...}) 方法中
+     */
+    private boolean mMergeClickMethods;
+    private Backend mBackend = Backend.BUTTERKNIFE;
+    /**
+     * 是否为 Adapter 生成列表项的 ViewHolder 内部类，而不是在类本身上生成绑定代码
+     */
+    private boolean mViewHolderMode;
+    /**
+     * 是否生成 unbindViews()。类中已经有 unbindViews() 时无论是否勾选都会更新它
+     */
+    private boolean mGenerateUnbind;
+    /**
+     * 本次绑定的布局名，ViewHolder 以第一个布局命名
+     */
+    private final List<String> mLayoutNames;
+    /**
+     * 本次生成插入到类中的字段和方法，导入、缩短类名和格式化都只作用于这些成员
+     */
+    private final List<PsiElement> mInsertedMembers = new ArrayList<>();
+    /**
+     * findViewById 方式下插入到已有 bindViews 方法末尾的语句，单独格式化
+     */
+    private final List<PsiElement> mInsertedStatements = new ArrayList<>();
+    /**
+     * findViewById 方式下需要加入 bindViews 的语句，参数是根布局参数名
+     */
+    private final List<Function<String, String>> mBindStatements = new ArrayList<>();
+    /**
+     * ButterKnife 方式下类中调用 ButterKnife.bind(...) 的语句，bindLazyViews 在它之后调用
+     */
+    private PsiStatement mButterKnifeBindStatement;
+    /**
+     * 本次生成能否给 mLazyRoot 赋值：findViewById 方式下在 bindViews 中赋值，ButterKnife 方式下需要
+     * 类中已经调用 ButterKnife.bind(...) 或 bindLazyViews(...)。不能赋值时延迟查找的控件和 ViewStub
+     * 按普通控件绑定，避免访问方法中的 mLazyRoot 为 null
+     */
+    private boolean mLazyRootAvailable;
 
-    public ViewFieldMethodCreator(FindViewByIdDialog dialog, Editor editor, PsiFile psiFile, PsiClass psiClass, String command, List<Element> elements, String selectedText) {
+    public ViewFieldMethodCreator(Editor editor, PsiFile psiFile, PsiClass psiClass, String command, List<Element> elements,
+                                 List<String> layoutNames) {
         super(psiClass.getProject(), command);
-        mDialog = dialog;
         mEditor = editor;
         mFile = psiFile;
         mProject = psiClass.getProject();
         mClass = psiClass;
         mElements = elements;
+        mLayoutNames = layoutNames;
         // 获取Factory
         mFactory = JavaPsiFacade.getElementFactory(mProject);
     }
 
+    public void setGenerationMode(GenerationMode generationMode) {
+        mGenerationMode = generationMode;
+    }
+
+    public void setReformat(boolean reformat) {
+        mReformat = reformat;
+    }
+
+    public void setMergeClickMethods(boolean mergeClickMethods) {
+        mMergeClickMethods = mergeClickMethods;
+    }
+
+    public void setBackend(Backend backend) {
+        mBackend = backend;
+    }
+
+    public void setViewHolderMode(boolean viewHolderMode) {
+        mViewHolderMode = viewHolderMode;
+    }
+
+    public void setGenerateUnbind(boolean generateUnbind) {
+        mGenerateUnbind = generateUnbind;
+    }
+
     /**
      * 单独用一个线程来生成代码
      * @throws Throwable
      */
     @Override
     protected void run() throws Throwable {
-        //生成属性
-        generateFields();
-        //生成方法
-        generateOnClickMethod();
-        //重写XXXActivity.java文件
-        //1.找到对应的项目
+        generate();
+        if (mEditor != null) {
+            Utils.showPopupBalloon(mEditor,"生成成功",5);
+        }
+    }
+
+    /**
+     * 生成字段和方法并格式化，需要在写操作中调用。批量生成时多个类共用外层的一个写命令，
+     * 直接调用这个方法
+     */
+    public void generate() {
+        mInsertedMembers.clear();
+        mInsertedStatements.clear();
+        mBindStatements.clear();
+        mButterKnifeBindStatement = mBackend == Backend.BUTTERKNIFE ? findButterKnifeBindStatement() : null;
+        mLazyRootAvailable = mBackend == Backend.FIND_VIEW_BY_ID || mButterKnifeBindStatement != null
+                || callsMethod(mClass, BindingRenderer.BIND_LAZY_VIEWS_METHOD_NAME);
+        long start = System.nanoTime();
+        if (mViewHolderMode) {
+            generateViewHolder();
+        } else if (mGenerationMode == GenerationMode.SINGLE_PASS) {
+            generateMembersInOnePass();
+        } else {
+            //生成属性
+            generateFields();
+            //延迟查找的根布局字段和访问方法
+            generateLazyMembers();
+            //生成方法
+            generateOnClickMethod();
+            //findViewById 方式下生成 bindViews
+            String bindViews = renderBindViews();
+            if (bindViews != null) {
+                mInsertedMembers.add(mClass.add(mFactory.createMethodFromText(bindViews, mClass)));
+            }
+        }
+        List<PsiElement> inserted = new ArrayList<>(mInsertedMembers);
+        inserted.addAll(mInsertedStatements);
+        if (inserted.isEmpty()) {
+            LatencyRecorder.getInstance().record(PHASE_PSI_GENERATION, start);
+            updateUnbindViews();
+            return;
+        }
+
+        //只为生成的成员实际用到的类型添加导入，不再优化整个文件的导入
         JavaCodeStyleManager styleManager = JavaCodeStyleManager.getInstance(mProject);
-        //优化文件
-        styleManager.optimizeImports(mFile);
-        styleManager.shortenClassReferences(mClass);
-        //2.执行写入
-        new ReformatCodeProcessor(mProject,mClass.getContainingFile(),null
-                ,false).runWithoutProgress();
+        addMissingImports(styleManager, inserted);
+        for (PsiElement member : inserted) {
+            styleManager.shortenClassReferences(member);
+        }
+        LatencyRecorder.getInstance().record(PHASE_PSI_GENERATION, start);
+        if (!mReformat) {
+            updateUnbindViews();
+            return;
+        }
+        //只格式化插入的范围，用户没有改动的代码保持原样。插入到已有 bindViews 中的语句和类末尾的
+        //成员不相邻，分成两段格式化，先格式化靠后的一段，前一段的偏移量不受影响
+        List<TextRange> ranges = new ArrayList<>(2);
+        addRange(ranges, mInsertedMembers);
+        addRange(ranges, mInsertedStatements);
+        ranges.sort((a, b) -> b.getStartOffset() - a.getStartOffset());
+        start = System.nanoTime();
+        for (TextRange range : ranges) {
+            CodeStyleManager.getInstance(mProject).reformatRange(mClass, range.getStartOffset(), range.getEndOffset());
+        }
+        LatencyRecorder.getInstance().record(PHASE_REFORMAT, start);
+        updateUnbindViews();
+    }
+
+    /**
+     * 按类中当前生成的字段更新 unbindViews()，并在 onDestroyView 或 onDestroy 中调用一次。
+     * 没有时添加到类末尾；已有的方法带有 UNBIND_VIEWS_MARKER 时整个替换，否则是用户自己写的，
+     * 不做任何修改，只在通知中列出缺少的置空语句。多次生成不会重复添加。类中没有 unbindViews()
+     * 并且没有勾选生成时什么都不做
+     */
+    private void updateUnbindViews() {
+        PsiMethod existing = findUnbindViewsMethod(mClass);
+        if (mViewHolderMode || existing == null && !mGenerateUnbind) {
+            return;
+        }
+
+        List<String> fields = new ArrayList<>();
+        List<String> listenerFields = new ArrayList<>();
+        collectGeneratedFields(fields, listenerFields);
+        CodeStyleManager codeStyleManager = CodeStyleManager.getInstance(mProject);
+        if (existing == null || isGeneratedUnbindViews(existing)) {
+            PsiMethod method = mFactory.createMethodFromText(
+                    BindingRenderer.renderUnbindViewsMethod(fields, listenerFields), mClass);
+            codeStyleManager.reformat(existing != null ? existing.replace(method) : mClass.add(method));
+        } else {
+            reportUserUnbindViews(existing, fields);
+            return;
+        }
+
+        for (String hookName : UNBIND_HOOK_METHOD_NAMES) {
+            for (PsiMethod hook : mClass.findMethodsByName(hookName, false)) {
+                PsiCodeBlock body = hook.getBody();
+                if (hook.getParameterList().getParametersCount() != 0 || body == null) {
+                    continue;
+                }
+                if (!callsMethod(body, BindingRenderer.UNBIND_VIEWS_METHOD_NAME)) {
+                    codeStyleManager.reformat(insertAfterSuperCall(body, hookName,
+                            mFactory.createStatementFromText(BindingRenderer.UNBIND_VIEWS_METHOD_NAME + "();", body)));
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 收集类中由插件生成的控件字段：&#64;BindView 字段、在生成的 bindViews 中赋值的字段、延迟查找和
+     * ViewStub 访问方法中赋值的字段以及 mLazyRoot。用户自己在其他方法中 findViewById 或 inflate
+     * 的字段不算在内。其中 id 设置了点击事件的字段同时加入 listenerFields
+     */
+    private void collectGeneratedFields(List<String> fields, List<String> listenerFields) {
+        List<PsiMethod> generatedMethods = new ArrayList<>();
+        PsiMethod bindViews = findBindViewsMethod(mClass);
+        if (bindViews != null) {
+            generatedMethods.add(bindViews);
+        }
+        for (PsiMethod method : mClass.getMethods()) {
+            if (isLazyAccessor(method)) {
+                generatedMethods.add(method);
+            }
+        }
+
+        Map<String, String> fieldIds = new HashMap<>();
+        for (PsiMethod method : generatedMethods) {
+            for (PsiAssignmentExpression assignment : PsiTreeUtil.findChildrenOfType(method, PsiAssignmentExpression.class)) {
+                PsiExpression value = PsiUtil.skipParenthesizedExprDown(assignment.getRExpression());
+                if (value instanceof PsiTypeCastExpression) {
+                    value = PsiUtil.skipParenthesizedExprDown(((PsiTypeCastExpression) value).getOperand());
+                }
+                if (!(value instanceof PsiMethodCallExpression) || !(assignment.getLExpression() instanceof PsiReferenceExpression)) {
+                    continue;
+                }
+                PsiMethodCallExpression call = (PsiMethodCallExpression) value;
+                String methodName = call.getMethodExpression().getReferenceName();
+                if (Utils.FIND_VIEW_BY_ID.equals(methodName) || Utils.INFLATE.equals(methodName)) {
+                    String id = Utils.getFindViewByIdName(call);
+                    fieldIds.put(((PsiReferenceExpression) assignment.getLExpression()).getReferenceName(), id == null ? "" : id);
+                }
+            }
+        }
+
+        Set<String> boundClicks = Utils.findBoundIds(mClass).get(Utils.ON_CLICK);
+        for (PsiField field : mClass.getFields()) {
+            if (field.hasModifierProperty(PsiModifier.STATIC) || field.hasModifierProperty(PsiModifier.FINAL)) {
+                continue;
+            }
+            String name = field.getName();
+            PsiAnnotation annotation = findAnnotation(field, Utils.BIND_VIEW);
+            String id = annotation != null ? Utils.getIdReferenceName(annotation.findDeclaredAttributeValue("value"))
+                    : fieldIds.get(name);
+            if (id == null && !BindingRenderer.LAZY_ROOT_FIELD_NAME.equals(name)) {
+                continue;
+            }
+            fields.add(name);
+            if (id != null && boundClicks.contains(id)) {
+                listenerFields.add(name);
+            }
+        }
+    }
+
+    private static boolean isGeneratedUnbindViews(PsiMethod method) {
+        PsiCodeBlock body = method.getBody();
+        if (body == null) {
+            return false;
+        }
+        for (PsiComment comment : PsiTreeUtil.findChildrenOfType(body, PsiComment.class)) {
+            if (BindingRenderer.UNBIND_VIEWS_MARKER.equals(comment.getText().trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 用户自己写的 unbindViews() 保持原样，只把还没有置空的生成字段以及对已经不存在的字段置空的语句
+     * 通过通知告诉用户，由用户自己修改
+     */
+    private void reportUserUnbindViews(PsiMethod method, List<String> fields) {
+        PsiCodeBlock body = method.getBody();
+        if (body == null) {
+            return;
+        }
+
+        Set<String> nulledFields = new HashSet<>();
+        List<String> staleFields = new ArrayList<>();
+        for (PsiAssignmentExpression assignment : PsiTreeUtil.findChildrenOfType(body, PsiAssignmentExpression.class)) {
+            PsiReferenceExpression target = getNullAssignmentTarget(assignment);
+            if (target == null) {
+                continue;
+            }
+            if (target.resolve() == null) {
+                staleFields.add(target.getReferenceName());
+            } else {
+                nulledFields.add(target.getReferenceName());
+            }
+        }
+        List<String> missingFields = new ArrayList<>();
+        for (String field : fields) {
+            if (!nulledFields.contains(field)) {
+                missingFields.add(field);
+            }
+        }
+        if (missingFields.isEmpty() && staleFields.isEmpty()) {
+            return;
+        }
+
+        StringBuilder message = new StringBuilder(mClass.getName()).append(".unbindViews() 是手写的，插件没有修改它。");
+        if (!missingFields.isEmpty()) {
+            message.append("<br>没有置空的字段：").append(String.join(", ", missingFields));
+        }
+        if (!staleFields.isEmpty()) {
+            message.append("<br>置空了已经不存在的字段：").append(String.join(", ", staleFields));
+        }
+        Utils.showNotification(mProject, message.toString(), NotificationType.WARNING);
+    }
+
+    /**
+     * assignment 形如 mTvText = null 时返回左边的 mTvText，否则返回 null
+     */
+    private static PsiReferenceExpression getNullAssignmentTarget(PsiAssignmentExpression assignment) {
+        PsiExpression value = PsiUtil.skipParenthesizedExprDown(assignment.getRExpression());
+        if (!(assignment.getLExpression() instanceof PsiReferenceExpression)
+                || !(value instanceof PsiLiteralExpression) || !PsiKeyword.NULL.equals(value.getText())) {
+            return null;
+        }
+        return (PsiReferenceExpression) assignment.getLExpression();
+    }
+
+    private static boolean callsMethod(PsiElement element, String methodName) {
+        for (PsiMethodCallExpression call : PsiTreeUtil.findChildrenOfType(element, PsiMethodCallExpression.class)) {
+            if (methodName.equals(call.getMethodExpression().getReferenceName())
+                    && call.getMethodExpression().getQualifierExpression() == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 把 statement 插入到 body 中 super.methodName() 调用之后，没有时插入到方法末尾
+     */
+    private static PsiElement insertAfterSuperCall(PsiCodeBlock body, String methodName, PsiStatement statement) {
+        for (PsiStatement existing : body.getStatements()) {
+            if (existing instanceof PsiExpressionStatement
+                    && ((PsiExpressionStatement) existing).getExpression() instanceof PsiMethodCallExpression) {
+                PsiReferenceExpression reference = ((PsiMethodCallExpression) ((PsiExpressionStatement) existing).getExpression()).getMethodExpression();
+                if (methodName.equals(reference.getReferenceName()) && reference.getQualifierExpression() instanceof PsiSuperExpression) {
+                    return body.addAfter(statement, existing);
+                }
+            }
+        }
+        PsiElement rBrace = body.getRBrace();
+        return rBrace != null ? body.addBefore(statement, rBrace) : body.add(statement);
+    }
+
+    /**
+     * 返回 psiClass 自身声明的无参 unbindViews 方法
+     */
+    public static PsiMethod findUnbindViewsMethod(PsiClass psiClass) {
+        for (PsiMethod method : psiClass.findMethodsByName(BindingRenderer.UNBIND_VIEWS_METHOD_NAME, false)) {
+            if (method.getParameterList().getParametersCount() == 0) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private static void addRange(List<TextRange> ranges, List<PsiElement> elements) {
+        if (!elements.isEmpty()) {
+            ranges.add(new TextRange(elements.get(0).getTextRange().getStartOffset(),
+                    elements.get(elements.size() - 1).getTextRange().getEndOffset()));
+        }
+    }
+
+    /**
+     * 删除绑定到 ids 的 @BindView 字段，并把这些 id 从 @OnClick 中去掉。合并的点击方法中只有
+     * break 的 case 分支一起删除。@OnClick 中已经没有 id 时，方法体为空就删除整个方法，否则只删除
+     * 注解，保留用户写的代码。findViewById 方式生成的 bindViews 语句、字段和空的点击方法也一并删除。
+     * 需要在写操作中调用
+     */
+    public void removeBindings(Set<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        List<PsiElement> toDelete = new ArrayList<>();
+        collectFindViewByIdBindings(ids, toDelete);
+        collectLazyAccessors(ids, toDelete);
+        for (PsiField field : mClass.getFields()) {
+            PsiAnnotation annotation = findAnnotation(field, Utils.BIND_VIEW);
+            if (annotation != null && ids.contains(Utils.getIdReferenceName(annotation.findDeclaredAttributeValue("value")))) {
+                toDelete.add(field);
+            }
+        }
+
+        for (PsiMethod method : mClass.getMethods()) {
+            PsiAnnotation annotation = findAnnotation(method, Utils.ON_CLICK);
+            if (annotation == null) {
+                continue;
+            }
+
+            PsiAnnotationMemberValue value = annotation.findDeclaredAttributeValue("value");
+            PsiAnnotationMemberValue[] values = value instanceof PsiArrayInitializerMemberValue
+                    ? ((PsiArrayInitializerMemberValue) value).getInitializers() : new PsiAnnotationMemberValue[]{value};
+            List<PsiElement> removedValues = new ArrayList<>();
+            for (PsiAnnotationMemberValue idValue : values) {
+                if (ids.contains(Utils.getIdReferenceName(idValue))) {
+                    removedValues.add(idValue);
+                }
+            }
+            if (removedValues.isEmpty()) {
+                continue;
+            }
+
+            PsiCodeBlock body = method.getBody();
+            if (removedValues.size() < values.length) {
+                toDelete.addAll(removedValues);
+                collectEmptySwitchCases(body, ids, toDelete);
+            } else if (body == null || body.isEmpty() || containsOnlyEmptyCases(body, ids)) {
+                toDelete.add(method);
+            } else {
+                toDelete.add(annotation);
+            }
+        }
+
+        for (PsiElement element : toDelete) {
+            if (element.isValid()) {
+                element.delete();
+            }
+        }
+        // 被删除的字段不能再出现在 unbindViews() 中
+        updateUnbindViews();
+    }
+
+    /**
+     * 找出 bindViews 中引用了 ids 的语句、由这些语句赋值的字段、对这些字段设置监听的语句，
+     * 以及对应的不带注解、方法体为空的点击方法
+     */
+    private void collectFindViewByIdBindings(Set<String> ids, List<PsiElement> toDelete) {
+        PsiMethod bindViews = findBindViewsMethod(mClass);
+        PsiCodeBlock body = bindViews == null ? null : bindViews.getBody();
+        if (body == null) {
+            return;
+        }
+
+        Set<String> fieldNames = new HashSet<>();
+        for (PsiStatement statement : body.getStatements()) {
+            if (!referencesId(statement, ids)) {
+                continue;
+            }
+            toDelete.add(statement);
+            if (statement instanceof PsiExpressionStatement
+                    && ((PsiExpressionStatement) statement).getExpression() instanceof PsiAssignmentExpression) {
+                PsiExpression target = ((PsiAssignmentExpression) ((PsiExpressionStatement) statement).getExpression()).getLExpression();
+                if (target instanceof PsiReferenceExpression) {
+                    fieldNames.add(((PsiReferenceExpression) target).getReferenceName());
+                }
+            }
+        }
+        // mTvText.setOnClickListener(...)
+        for (PsiStatement statement : body.getStatements()) {
+            for (PsiMethodCallExpression call : PsiTreeUtil.findChildrenOfType(statement, PsiMethodCallExpression.class)) {
+                PsiExpression qualifier = call.getMethodExpression().getQualifierExpression();
+                if (qualifier instanceof PsiReferenceExpression
+                        && fieldNames.contains(((PsiReferenceExpression) qualifier).getReferenceName())
+                        && !toDelete.contains(statement)) {
+                    toDelete.add(statement);
+                }
+            }
+        }
+        for (String fieldName : fieldNames) {
+            PsiField field = mClass.findFieldByName(fieldName, false);
+            if (field != null && findAnnotation(field, Utils.BIND_VIEW) == null) {
+                toDelete.add(field);
+            }
+        }
 
-        Utils.showPopupBalloon(mEditor,"生成成功",5);
+        for (PsiMethod method : mClass.getMethods()) {
+            if (findAnnotation(method, Utils.ON_CLICK) != null || method.getBody() == null) {
+                continue;
+            }
+            if (method.getName().startsWith(MERGED_CLICK_METHOD_NAME)) {
+                collectEmptySwitchCases(method.getBody(), ids, toDelete);
+                continue;
+            }
+            for (String id : ids) {
+                if (method.getName().equals(NameUtils.toCamelCase(id) + "Click") && method.getBody().isEmpty()) {
+                    toDelete.add(method);
+                }
+            }
+        }
+    }
+
+    /**
+     * 找出从 mLazyRoot 中查找 ids 的延迟访问方法，以及方法中赋值的字段。ViewStub 的访问方法中
+     * 还包括 inflate 之后查找的控件字段
+     */
+    private void collectLazyAccessors(Set<String> ids, List<PsiElement> toDelete) {
+        for (PsiMethod method : mClass.getMethods()) {
+            if (method.getParameterList().getParametersCount() != 0 || method.getBody() == null) {
+                continue;
+            }
+            for (PsiMethodCallExpression call : PsiTreeUtil.findChildrenOfType(method.getBody(), PsiMethodCallExpression.class)) {
+                PsiExpression qualifier = call.getMethodExpression().getQualifierExpression();
+                if (!Utils.FIND_VIEW_BY_ID.equals(call.getMethodExpression().getReferenceName())
+                        || !(qualifier instanceof PsiReferenceExpression)
+                        || !BindingRenderer.LAZY_ROOT_FIELD_NAME.equals(((PsiReferenceExpression) qualifier).getReferenceName())
+                        || !referencesId(call.getArgumentList(), ids)) {
+                    continue;
+                }
+                toDelete.add(method);
+                for (PsiAssignmentExpression assignment : PsiTreeUtil.findChildrenOfType(method.getBody(), PsiAssignmentExpression.class)) {
+                    if (!(assignment.getLExpression() instanceof PsiReferenceExpression)) {
+                        continue;
+                    }
+                    PsiField field = mClass.findFieldByName(((PsiReferenceExpression) assignment.getLExpression()).getReferenceName(), false);
+                    if (field != null && !toDelete.contains(field)) {
+                        toDelete.add(field);
+                    }
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * method 是否为生成的延迟查找或 ViewStub 访问方法：没有参数，并且在 mLazyRoot 上调用 findViewById
+     */
+    private static boolean isLazyAccessor(PsiMethod method) {
+        if (method.getParameterList().getParametersCount() != 0 || method.getBody() == null) {
+            return false;
+        }
+        for (PsiMethodCallExpression call : PsiTreeUtil.findChildrenOfType(method.getBody(), PsiMethodCallExpression.class)) {
+            PsiExpression qualifier = call.getMethodExpression().getQualifierExpression();
+            if (Utils.FIND_VIEW_BY_ID.equals(call.getMethodExpression().getReferenceName())
+                    && qualifier instanceof PsiReferenceExpression
+                    && BindingRenderer.LAZY_ROOT_FIELD_NAME.equals(((PsiReferenceExpression) qualifier).getReferenceName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean referencesId(PsiElement element, Set<String> ids) {
+        for (PsiReferenceExpression reference : PsiTreeUtil.findChildrenOfType(element, PsiReferenceExpression.class)) {
+            if (ids.contains(Utils.getIdReferenceName(reference))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static PsiAnnotation findAnnotation(PsiModifierListOwner owner, String name) {
+        PsiModifierList modifierList = owner.getModifierList();
+        if (modifierList == null) {
+            return null;
+        }
+        for (PsiAnnotation annotation : modifierList.getAnnotations()) {
+            PsiJavaCodeReferenceElement reference = annotation.getNameReferenceElement();
+            if (reference != null && name.equals(reference.getReferenceName())) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 找出 body 中 case R.id.xxx（xxx 属于 ids）后面只有一个 break 的分支，把 case 和 break 都加入 toDelete
+     */
+    private static void collectEmptySwitchCases(PsiCodeBlock body, Set<String> ids, List<PsiElement> toDelete) {
+        if (body == null) {
+            return;
+        }
+        for (PsiSwitchLabelStatement label : PsiTreeUtil.findChildrenOfType(body, PsiSwitchLabelStatement.class)) {
+            PsiExpressionList values = label.getCaseValues();
+            if (values == null || values.getExpressionCount() != 1
+                    || !ids.contains(Utils.getIdReferenceName(values.getExpressions()[0]))) {
+                continue;
+            }
+            PsiStatement next = PsiTreeUtil.getNextSiblingOfType(label, PsiStatement.class);
+            if (next instanceof PsiBreakStatement) {
+                toDelete.add(label);
+                toDelete.add(next);
+            }
+        }
+    }
+
+    /**
+     * body 是否只有一个 switch，并且其中的分支都是可以随 ids 一起删除的空分支
+     */
+    private static boolean containsOnlyEmptyCases(PsiCodeBlock body, Set<String> ids) {
+        PsiStatement[] statements = body.getStatements();
+        if (statements.length != 1 || !(statements[0] instanceof PsiSwitchStatement)) {
+            return false;
+        }
+        List<PsiElement> emptyCases = new ArrayList<>();
+        collectEmptySwitchCases(body, ids, emptyCases);
+        PsiCodeBlock switchBody = ((PsiSwitchStatement) statements[0]).getBody();
+        return switchBody != null && switchBody.getStatements().length == emptyCases.size();
+    }
+
+    /**
+     * 为插入的成员中无法解析的类型引用添加导入，候选类在 IMPORT_CANDIDATE_PACKAGES 中查找
+     */
+    private void addMissingImports(JavaCodeStyleManager styleManager, List<PsiElement> inserted) {
+        if (!(mFile instanceof PsiJavaFile)) {
+            return;
+        }
+
+        PsiJavaFile javaFile = (PsiJavaFile) mFile;
+        JavaPsiFacade facade = JavaPsiFacade.getInstance(mProject);
+        GlobalSearchScope scope = javaFile.getResolveScope();
+        Set<String> handled = new HashSet<>();
+        for (PsiElement member : inserted) {
+            for (PsiJavaCodeReferenceElement reference : PsiTreeUtil.findChildrenOfType(member, PsiJavaCodeReferenceElement.class)) {
+                // R.id.xxx、view.getId() 这类表达式不是类型引用
+                if (reference instanceof PsiReferenceExpression || reference.isQualified()) continue;
+
+                String name = reference.getReferenceName();
+                if (name == null || !handled.add(name) || reference.resolve() != null) continue;
+
+                for (String packageName : IMPORT_CANDIDATE_PACKAGES) {
+                    PsiClass psiClass = facade.findClass(packageName + "." + name, scope);
+                    if (psiClass != null) {
+                        styleManager.addImport(javaFile, psiClass);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 把所有需要生成的字段和方法拼接成一段文本，只调用一次 createClassFromText 解析，
+     * 再用 addRangeBefore 一次性插入到类的右括号之前
+     */
+    private void generateMembersInOnePass() {
+        StringBuilder members = new StringBuilder();
+        for (Element element : mElements) {
+            // ViewStub 的字段随访问方法一起生成，见 renderLazyMembers
+            if (element.isCreateField() && !isStubAccessor(element)) {
+                members.append(renderField(element)).append('\n');
+            }
+        }
+        List<String> lazyFields = new ArrayList<>();
+        List<String> lazyMethods = new ArrayList<>();
+        renderLazyMembers(lazyFields, lazyMethods);
+        for (String member : lazyFields) {
+            members.append(member).append('\n');
+        }
+        for (String member : lazyMethods) {
+            members.append(member).append('\n');
+        }
+        for (String method : renderClickMethods()) {
+            members.append(method).append('\n');
+        }
+        String bindViews = renderBindViews();
+        if (bindViews != null) {
+            members.append(bindViews).append('\n');
+        }
+        if (members.length() == 0) {
+            return;
+        }
+
+        // createClassFromText 会把文本作为一个 _Dummy_ 类的类体来解析
+        PsiClass dummyClass = mFactory.createClassFromText(members.toString(), mClass);
+        PsiElement lBrace = dummyClass.getLBrace();
+        PsiElement rBrace = dummyClass.getRBrace();
+        if (lBrace == null || rBrace == null || lBrace.getNextSibling() == rBrace) {
+            return;
+        }
+        PsiElement anchor = mClass.getRBrace();
+        PsiElement first = lBrace.getNextSibling();
+        PsiElement last = rBrace.getPrevSibling();
+        PsiElement added = anchor != null ? mClass.addRangeBefore(first, last, anchor) : mClass.addRange(first, last);
+        // 记录插入的成员，跳过两端的空白
+        for (PsiElement element = added; element != null && element != mClass.getRBrace(); element = element.getNextSibling()) {
+            if (element instanceof PsiMember) {
+                mInsertedMembers.add(element);
+            }
+        }
+    }
+
+    /**
+     * 在 Adapter 中插入列表项的 ViewHolder 内部类，名称由布局名得出，如 item_user 对应
+     * ItemUserViewHolder，已有同名内部类时加上序号
+     */
+    private void generateViewHolder() {
+        String superClassName = Utils.getViewHolderSuperClass(mClass);
+        if (superClassName == null) {
+            superClassName = "RecyclerView.ViewHolder";
+        }
+        String layoutName = mLayoutNames.isEmpty() ? "item" : mLayoutNames.get(0);
+        String baseName = NameUtils.firstToUpperCase(NameUtils.toCamelCase(layoutName)) + "ViewHolder";
+        String className = baseName;
+        for (int i = 2; mClass.findInnerClassByName(className, false) != null; i++) {
+            className = baseName + i;
+        }
+
+        String text = BindingRenderer.renderViewHolder(className, superClassName, mElements,
+                Utils.findItemTypeName(mClass), mMergeClickMethods);
+        PsiClass viewHolder = mFactory.createClassFromText(text, mClass).getInnerClasses()[0];
+        mInsertedMembers.add(mClass.add(viewHolder));
     }
 
     /**
@@ -67,66 +808,290 @@ public class ViewFieldMethodCreator extends Simple {
 //        @BindView(R.id.tvText)
 //        public TextView mTvText;
         for (Element element : mElements) {
-            StringBuilder text=new StringBuilder();
-            text.append("@BindView("+element.getFullIdString()+")\n");
-            text.append("public ");
-            text.append(element.getFieldTypeName()+" ");
-            text.append(element.getFieldName()+";");
-            if(element.isCreateField()){
-                mClass.add(mFactory.createFieldFromText(text.toString(),mClass));
+            if(element.isCreateField() && !isStubAccessor(element)){
+                mInsertedMembers.add(mClass.add(mFactory.createFieldFromText(renderField(element),mClass)));
             }
         }
     }
 
 
+    private void generateLazyMembers() {
+        List<String> lazyFields = new ArrayList<>();
+        List<String> lazyMethods = new ArrayList<>();
+        renderLazyMembers(lazyFields, lazyMethods);
+        for (String field : lazyFields) {
+            mInsertedMembers.add(mClass.add(mFactory.createFieldFromText(field, mClass)));
+        }
+        for (String method : lazyMethods) {
+            mInsertedMembers.add(mClass.add(mFactory.createMethodFromText(method, mClass)));
+        }
+    }
+
     /**
      * 创建监听事件方法
      */
     private void generateOnClickMethod() {
+//        @OnClick(R.id.tvText)
+//        private void tvTextClick(TextView tvText) {
+//        }
+        for (String method : renderClickMethods()) {
+            //创建onclick方法
+            mInsertedMembers.add(mClass.add(mFactory.createMethodFromText(method, mClass)));
+        }
+    }
+
+    /**
+     * 生成所有需要创建的点击方法的文本。类及其父类中已有的方法名只收集一次，
+     * 之后每个方法名只需一次哈希查找；合并模式下所有 id 共用一个带 switch 的方法
+     */
+    private List<String> renderClickMethods() {
+        List<Element> clickElements = new ArrayList<>();
+        for (Element element : mElements) {
+            if (element.isCreateClickMethod()) {
+                clickElements.add(element);
+            }
+        }
+        if (clickElements.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Set<String> methodNames = new HashSet<>();
+        for (PsiMethod method : mClass.getAllMethods()) {
+            methodNames.add(method.getName());
+        }
+
+        boolean annotated = mBackend == Backend.BUTTERKNIFE;
+        List<String> methods = new ArrayList<>();
+        if (mMergeClickMethods) {
+            String methodName = MERGED_CLICK_METHOD_NAME;
+            for (int i = 2; methodNames.contains(methodName); i++) {
+                methodName = MERGED_CLICK_METHOD_NAME + i;
+            }
+            methods.add(BindingRenderer.renderMergedClickMethod(clickElements, methodName, annotated));
+            for (Element element : clickElements) {
+                addClickListener(element, methodName, true);
+            }
+            return methods;
+        }
+
+        for (Element element : clickElements) {
+            //生成onClick()   btnClick()
+            String methodName = getClickMethodName(element) + "Click";
+            if (methodNames.add(methodName)) {
+                methods.add(BindingRenderer.renderClickMethod(element, methodName, annotated));
+                addClickListener(element, methodName, false);
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * 按当前的生成方式渲染字段，findViewById 方式下同时记录 bindViews 中的赋值语句
+     */
+    private String renderField(Element element) {
+        if (isDeferred(element)) {
+            // 延迟查找的字段由访问方法赋值，见 renderLazyMembers
+            return BindingRenderer.renderLazyField(element);
+        }
+        if (mBackend == Backend.BUTTERKNIFE) {
+            return BindingRenderer.renderField(element);
+        }
+        mBindStatements.add(root -> BindingRenderer.renderFindViewById(element, root));
+        return BindingRenderer.renderPlainField(element);
+    }
+
+    /**
+     * 渲染延迟查找需要的成员：每个延迟查找的控件或 ViewStub 一个访问方法，类中还没有根布局字段时
+     * 再加上 mLazyRoot 字段及其赋值。ButterKnife 方式下生成 bindLazyViews(View root)，并在
+     * ButterKnife.bind(...) 之后插入对它的调用，findViewById 方式下直接在 bindViews 中赋值。
+     * 类中已有同名方法时不再生成
+     */
+    private void renderLazyMembers(List<String> fields, List<String> methods) {
+        Set<String> methodNames = null;
+        Function<String, List<LayoutIdEntry>> stubLoader = null;
+        // 多个 ViewStub 引用同一个布局时，控件字段只生成一次
+        Set<String> stubFieldNames = new HashSet<>();
         for (Element element : mElements) {
-            if(element.isCreateClickMethod()){
-                //生成onClick()   btnClick()
-                String methodName=getClickMethodName(element)+"Click";
-                PsiMethod[] onClickMethod=mClass.findMethodsByName(methodName,true);
-                boolean clickMethodExist=onClickMethod.length>0;
-                if(!clickMethodExist){
-                    createClickMethod(methodName,element);
+            if (!element.isCreateField() || !isDeferred(element)) {
+                continue;
+            }
+            if (methodNames == null) {
+                methodNames = new HashSet<>();
+                for (PsiMethod method : mClass.getMethods()) {
+                    methodNames.add(method.getName());
                 }
             }
+            if (!methodNames.add(element.getLazyAccessorName())) {
+                continue;
+            }
+            if (!element.isStub()) {
+                methods.add(BindingRenderer.renderLazyAccessor(element));
+                continue;
+            }
+
+            if (stubLoader == null) {
+                PsiLayoutSource source = new PsiLayoutSource(mProject, LayoutLocator.getLayoutScope(mProject, mFile));
+                stubLoader = layoutName -> Utils.getIncludeResolver(mProject).resolve(layoutName, source);
+            }
+            List<Element> children = getStubChildren(element, stubLoader, stubFieldNames);
+            fields.add(BindingRenderer.renderStubField(element));
+            for (Element child : children) {
+                fields.add(BindingRenderer.renderLazyField(child));
+            }
+            methods.add(BindingRenderer.renderStubAccessor(element, children));
+        }
+        if (methodNames == null) {
+            return;
+        }
+        if (mBackend == Backend.BUTTERKNIFE && !callsMethod(mClass, BindingRenderer.BIND_LAZY_VIEWS_METHOD_NAME)) {
+            insertBindLazyViewsCall();
+        }
+        if (mClass.findFieldByName(BindingRenderer.LAZY_ROOT_FIELD_NAME, false) != null) {
+            return;
+        }
+
+        fields.add(BindingRenderer.renderLazyRootField());
+        if (mBackend == Backend.FIND_VIEW_BY_ID) {
+            mBindStatements.add(BindingRenderer::renderLazyRootAssignment);
+        } else if (methodNames.add(BindingRenderer.BIND_LAZY_VIEWS_METHOD_NAME)) {
+            methods.add(BindingRenderer.renderBindLazyViewsMethod());
         }
     }
 
+    /**
+     * element 是否生成延迟查找或 ViewStub 的访问方法，而不是在绑定时查找
+     */
+    private boolean isDeferred(Element element) {
+        return mLazyRootAvailable && (element.isLazy() || element.isStub());
+    }
 
-    private void createClickMethod(String methodName, Element element) {
-//        @OnClick(R.id.tvText)
-//        private void tvTextClick(TextView tvText) {
-//        }
-        StringBuilder methodBuilder=new StringBuilder();
-        methodBuilder.append("@OnClick("+element.getFullIdString()+")\n");
-        methodBuilder.append("public void "+methodName+"("+element.getFieldTypeName()+" "
-                +getClickMethodName(element)+"){");
-        methodBuilder.append("\n}");
-        //创建onclick方法
-        mClass.add(mFactory.createMethodFromText(methodBuilder.toString(),mClass));
+    /**
+     * ViewStub 的字段只随访问方法生成；无法生成访问方法时 ViewStub 本身按普通控件绑定
+     */
+    private boolean isStubAccessor(Element element) {
+        return mLazyRootAvailable && element.isStub();
     }
 
+    /**
+     * 返回类中调用 ButterKnife.bind(...) 的语句，没有时返回 null
+     */
+    private PsiStatement findButterKnifeBindStatement() {
+        for (PsiMethod method : mClass.getMethods()) {
+            if (method.getBody() == null) {
+                continue;
+            }
+            for (PsiMethodCallExpression call : PsiTreeUtil.findChildrenOfType(method.getBody(), PsiMethodCallExpression.class)) {
+                PsiExpression qualifier = call.getMethodExpression().getQualifierExpression();
+                if (BUTTERKNIFE_BIND_METHOD_NAME.equals(call.getMethodExpression().getReferenceName())
+                        && qualifier instanceof PsiReferenceExpression
+                        && BUTTERKNIFE_CLASS_NAME.equals(((PsiReferenceExpression) qualifier).getReferenceName())) {
+                    return PsiTreeUtil.getParentOfType(call, PsiStatement.class);
+                }
+            }
+        }
+        return null;
+    }
 
+    /**
+     * 在 ButterKnife.bind(...) 之后调用 bindLazyViews，根布局按 bind 的参数确定：
+     * bind(this, view) 使用 view，Activity、Dialog 中的 bind(this) 使用 getWindow().getDecorView()，
+     * 其他情况（如自定义 View 中的 bind(this)）使用参数本身
+     */
+    private void insertBindLazyViewsCall() {
+        PsiElement parent = mButterKnifeBindStatement == null ? null : mButterKnifeBindStatement.getParent();
+        PsiMethodCallExpression call = PsiTreeUtil.findChildOfType(mButterKnifeBindStatement, PsiMethodCallExpression.class);
+        if (parent == null || call == null) {
+            return;
+        }
+        PsiExpression[] arguments = call.getArgumentList().getExpressions();
+        if (arguments.length == 0) {
+            return;
+        }
 
+        String rootName;
+        if (arguments.length > 1) {
+            rootName = arguments[1].getText();
+        } else if (Utils.isWindowClass(mClass) && arguments[0] instanceof PsiThisExpression) {
+            rootName = "getWindow().getDecorView()";
+        } else {
+            rootName = arguments[0].getText();
+        }
+        PsiStatement statement = mFactory.createStatementFromText(
+                BindingRenderer.BIND_LAZY_VIEWS_METHOD_NAME + "(" + rootName + ");", mButterKnifeBindStatement);
+        mInsertedStatements.add(parent.addAfter(statement, mButterKnifeBindStatement));
+    }
 
     /**
-     * 获取点击方法的名称   tv_text   tvText
+     * ViewStub 布局中需要在 inflate 时查找的控件，跳过主布局中已有的 id、类中已有的字段以及
+     * 本次已经生成的字段 fieldNames
      */
-    public String getClickMethodName(Element element) {
-        String[] names = element.getId().split("_");
-        // aaBbCc
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < names.length; i++) {
-            if (i == 0) {
-                sb.append(names[i]);
-            } else {
-                sb.append(Utils.firstToUpperCase(names[i]));
+    private List<Element> getStubChildren(Element stub, Function<String, List<LayoutIdEntry>> loader,
+                                          Set<String> fieldNames) {
+        Set<String> ids = new HashSet<>();
+        for (Element element : mElements) {
+            ids.add(element.getId());
+        }
+        List<Element> children = new ArrayList<>();
+        for (Element child : stub.getStubChildren(loader)) {
+            if (!ids.contains(child.getId()) && mClass.findFieldByName(child.getFieldName(), false) == null
+                    && !fieldNames.contains(child.getFieldName())) {
+                children.add(child);
+                fieldNames.add(child.getFieldName());
+            }
+        }
+        return children;
+    }
+
+    private void addClickListener(Element element, String methodName, boolean merged) {
+        if (mBackend == Backend.FIND_VIEW_BY_ID) {
+            mBindStatements.add(root -> BindingRenderer.renderClickListener(element, methodName, merged, root));
+        }
+    }
+
+    /**
+     * findViewById 方式下，类中还没有 bindViews(View) 时返回包含所有语句的方法文本；已经有时把语句
+     * 追加到该方法的末尾（使用它自己的参数名）并返回 null
+     */
+    private String renderBindViews() {
+        if (mBackend != Backend.FIND_VIEW_BY_ID || mBindStatements.isEmpty()) {
+            return null;
+        }
+
+        PsiMethod existing = findBindViewsMethod(mClass);
+        PsiCodeBlock body = existing == null ? null : existing.getBody();
+        if (body == null) {
+            List<String> statements = new ArrayList<>(mBindStatements.size());
+            for (Function<String, String> statement : mBindStatements) {
+                statements.add(statement.apply(ROOT_PARAMETER_NAME));
+            }
+            return BindingRenderer.renderBindViewsMethod(statements);
+        }
+
+        String rootName = existing.getParameterList().getParameters()[0].getName();
+        PsiElement rBrace = body.getRBrace();
+        for (Function<String, String> statement : mBindStatements) {
+            PsiStatement psiStatement = mFactory.createStatementFromText(statement.apply(rootName), body);
+            mInsertedStatements.add(rBrace != null ? body.addBefore(psiStatement, rBrace) : body.add(psiStatement));
+        }
+        return null;
+    }
+
+    /**
+     * 返回 psiClass 自身声明的只有一个参数的 bindViews 方法
+     */
+    public static PsiMethod findBindViewsMethod(PsiClass psiClass) {
+        for (PsiMethod method : psiClass.findMethodsByName(BindingRenderer.BIND_VIEWS_METHOD_NAME, false)) {
+            if (method.getParameterList().getParametersCount() == 1) {
+                return method;
             }
         }
-        return sb.toString();
+        return null;
+    }
+
+    /**
+     * 获取点击方法的名称   tv_text   tvText
+     */
+    public String getClickMethodName(Element element) {
+        return BindingRenderer.getClickMethodName(element);
     }
 }
@@ -0,0 +1,243 @@
+package action;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.fixtures.LightJavaCodeInsightFixtureTestCase;
+import entity.BindingSession;
+import entity.Element;
+import util.LayoutLocator;
+import view.ViewFieldMethodCreator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 在轻量测试工程中跑完整的 ButterKnifePlugin 流程（跳过选择对话框），分别为布局查找、
+ * 从类中识别布局并提取 id、PSI 插入以及插入加上插件自己的范围格式化设置时间预算。工程中除了被测布局外还有一批无关布局，
+ * 被测布局带一条 include 链和一个 layout-land 变体
+ */
+public class ButterKnifePluginPerformanceTest extends LightJavaCodeInsightFixtureTestCase {
+
+    private static final int OTHER_LAYOUTS = 300;
+    private static final String[] TYPES = {"TextView", "Button", "ImageView", "android.widget.EditText"};
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        myFixture.addClass("package butterknife; public @interface BindView { int value(); }");
+        myFixture.addClass("package butterknife; public @interface OnClick { int[] value(); }");
+        myFixture.addClass("package android.view; public class View { public int getId() { return 0; } }");
+        myFixture.addClass("package android.widget; public class TextView extends android.view.View {}");
+        myFixture.addClass("package android.widget; public class Button extends TextView {}");
+        myFixture.addClass("package android.widget; public class EditText extends TextView {}");
+        myFixture.addClass("package android.widget; public class ImageView extends android.view.View {}");
+        for (int i = 0; i < OTHER_LAYOUTS; i++) {
+            addLayout("layout", "item_other_" + i, "other_" + i, 0, 5, null);
+        }
+    }
+
+    public void testSmallScreen() throws Exception {
+        runFlow(10, 0, 50, 100, 500, 500);
+    }
+
+    public void testMediumScreen() throws Exception {
+        runFlow(100, 2, 50, 300, 1500, 1500);
+    }
+
+    public void testLargeScreen() throws Exception {
+        runFlow(1000, 4, 50, 2000, 8000, 8000);
+    }
+
+    /**
+     * 同一个类、同一批控件分别用两种 GenerationMode 生成（不格式化），报告各自最好的一次耗时，
+     * 并检查两种方式生成的字段和方法一样多
+     */
+    public void testGenerationModes() throws Exception {
+        String layoutName = "activity_modes";
+        addLayoutChain(layoutName, 300, 0);
+        String classText = "package com.example;\n\npublic class ModesActivity {\n}\n";
+        PsiFile javaFile = myFixture.addFileToProject("com/example/ModesActivity.java", classText);
+        Document document = PsiDocumentManager.getInstance(getProject()).getDocument(javaFile);
+        List<Element> elements = ButterKnifePlugin.findElements(getProject(), javaFile, layoutName);
+        for (int i = 0; i < elements.size(); i += 2) {
+            elements.get(i).setCreateClickMethod(true);
+        }
+
+        long perMember = measureGeneration(javaFile, document, classText, elements, layoutName,
+                ViewFieldMethodCreator.GenerationMode.PER_MEMBER);
+        int perMemberFields = getTargetClass(javaFile).getFields().length;
+        int perMemberMethods = getTargetClass(javaFile).getMethods().length;
+        long singlePass = measureGeneration(javaFile, document, classText, elements, layoutName,
+                ViewFieldMethodCreator.GenerationMode.SINGLE_PASS);
+        assertEquals(perMemberFields, getTargetClass(javaFile).getFields().length);
+        assertEquals(perMemberMethods, getTargetClass(javaFile).getMethods().length);
+
+        System.out.printf("generation modes, %d views: PER_MEMBER %.2f ms, SINGLE_PASS %.2f ms%n",
+                elements.size(), perMember / 1e6, singlePass / 1e6);
+    }
+
+    private void runFlow(int views, int includeDepth, int lookupMs, int extractMs, int insertMs, int reformatMs) throws Exception {
+        String layoutName = "activity_perf_" + views;
+        PsiFile deepestLayout = addLayoutChain(layoutName, views, includeDepth);
+
+        String classText = "package com.example;\n\npublic class PerfActivity {\n"
+                + "    int getLayoutId() {\n        return R.layout." + layoutName + ";\n    }\n}\n";
+        PsiFile javaFile = myFixture.addFileToProject("com/example/PerfActivity.java", classText);
+        int caretOffset = classText.indexOf("return");
+        Document document = PsiDocumentManager.getInstance(getProject()).getDocument(javaFile);
+        GlobalSearchScope scope = LayoutLocator.getLayoutScope(getProject(), javaFile);
+
+        PlatformTestUtil.startPerformanceTest("layout lookup, " + views + " views", lookupMs,
+                () -> assertEquals(2, LayoutLocator.findLayoutFiles(getProject(), layoutName, scope).size()))
+                .attempts(5)
+                .assertTiming();
+
+        // 和 action 一样先从光标所在类中识别布局名，再创建会话
+        PlatformTestUtil.startPerformanceTest("layout detection and id extraction, " + views + " views", extractMs,
+                () -> {
+                    BindingSession session = detectAndCreateSession(javaFile, caretOffset);
+                    assertEquals(views, session.getElements().size());
+                    session.release();
+                })
+                .setup(() -> touch(deepestLayout))
+                .attempts(5)
+                .assertTiming();
+
+        BindingSession session = detectAndCreateSession(javaFile, caretOffset);
+        assertEquals(Collections.singletonList(layoutName), session.getLayoutNames());
+        List<Element> elements = session.getElements();
+        session.release();
+        for (int i = 0; i < elements.size(); i += 2) {
+            elements.get(i).setCreateClickMethod(true);
+        }
+
+        PlatformTestUtil.startPerformanceTest("psi insertion, " + views + " views", insertMs,
+                () -> generate(javaFile, elements, layoutName, false))
+                .setup(() -> resetText(document, classText))
+                .attempts(3)
+                .assertTiming();
+        assertEquals(views, getTargetClass(javaFile).getFields().length);
+
+        // 同样的插入加上 generate() 中只针对插入范围的 reformatRange，两个预算之差就是插件格式化的预算
+        PlatformTestUtil.startPerformanceTest("psi insertion and range reformat, " + views + " views",
+                insertMs + reformatMs,
+                () -> generate(javaFile, elements, layoutName, true))
+                .setup(() -> resetText(document, classText))
+                .attempts(3)
+                .assertTiming();
+        assertEquals(views, getTargetClass(javaFile).getFields().length);
+    }
+
+    /**
+     * 和 ButterKnifePlugin.actionPerformed 在后台读操作中做的一样：识别布局名并创建会话
+     */
+    private BindingSession detectAndCreateSession(PsiFile javaFile, int caretOffset) {
+        Map<String, List<PsiFile>> layouts = ButterKnifePlugin.findLayoutNames(javaFile, caretOffset, null);
+        BindingSession session = ButterKnifePlugin.createSession(getProject(), javaFile, caretOffset,
+                new ArrayList<>(layouts.keySet()), layouts);
+        assertNotNull(session);
+        return session;
+    }
+
+    /**
+     * 从 classText 开始用 mode 生成 5 次，返回最快一次的纳秒数，结束时类中保留最后一次生成的代码
+     */
+    private long measureGeneration(PsiFile javaFile, Document document, String classText, List<Element> elements,
+                                   String layoutName, ViewFieldMethodCreator.GenerationMode mode) {
+        long best = Long.MAX_VALUE;
+        for (int attempt = 0; attempt < 5; attempt++) {
+            resetText(document, classText);
+            long start = System.nanoTime();
+            generate(javaFile, elements, layoutName, false, mode);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private void generate(PsiFile javaFile, List<Element> elements, String layoutName, boolean reformat) {
+        generate(javaFile, elements, layoutName, reformat, ViewFieldMethodCreator.GenerationMode.SINGLE_PASS);
+    }
+
+    private void generate(PsiFile javaFile, List<Element> elements, String layoutName, boolean reformat,
+                          ViewFieldMethodCreator.GenerationMode mode) {
+        PsiClass psiClass = getTargetClass(javaFile);
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+            ViewFieldMethodCreator creator = new ViewFieldMethodCreator(null, javaFile, psiClass, "perf", elements,
+                    Collections.singletonList(layoutName));
+            creator.setReformat(reformat);
+            creator.setGenerationMode(mode);
+            creator.generate();
+        });
+    }
+
+    private void resetText(Document document, String text) {
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+            document.setText(text);
+            PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+        });
+    }
+
+    /**
+     * 修改 layout 文件让 IncludeResolver 中依赖它的缓存全部失效，每次都测量冷缓存的 id 提取
+     */
+    private void touch(PsiFile layout) {
+        Document document = PsiDocumentManager.getInstance(getProject()).getDocument(layout);
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+            document.insertString(document.getTextLength(), "\n");
+            PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+        });
+    }
+
+    private static PsiClass getTargetClass(PsiFile javaFile) {
+        return ((PsiJavaFile) javaFile).getClasses()[0];
+    }
+
+    /**
+     * 根布局 layoutName 经过 includeDepth 层 include 包含其余控件，views 个控件平均分布在链上，
+     * 另有一个只包含根布局自身控件的 layout-land 变体。返回链上最深的布局
+     */
+    private PsiFile addLayoutChain(String layoutName, int views, int includeDepth) {
+        int layoutCount = includeDepth + 1;
+        int perLayout = views / layoutCount;
+        int index = 0;
+        PsiFile deepest = null;
+        for (int depth = 0; depth < layoutCount; depth++) {
+            int count = depth == layoutCount - 1 ? views - index : perLayout;
+            String name = depth == 0 ? layoutName : layoutName + "_part_" + depth;
+            String include = depth < includeDepth ? layoutName + "_part_" + (depth + 1) : null;
+            deepest = addLayout("layout", name, "view", index, count, include);
+            if (depth == 0) {
+                addLayout("layout-land", name, "view", index, count, null);
+            }
+            index += count;
+        }
+        return deepest;
+    }
+
+    private PsiFile addLayout(String directory, String name, String idPrefix, int firstIndex, int count, String include) {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n")
+                .append("<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n")
+                .append("    android:layout_width=\"match_parent\"\n")
+                .append("    android:layout_height=\"match_parent\">\n");
+        for (int i = firstIndex; i < firstIndex + count; i++) {
+            xml.append("    <").append(TYPES[i % TYPES.length])
+                    .append(" android:id=\"@+id/").append(idPrefix).append("_item_").append(i).append("\"\n")
+                    .append("        android:layout_width=\"wrap_content\"\n")
+                    .append("        android:layout_height=\"wrap_content\" />\n");
+        }
+        if (include != null) {
+            xml.append("    <include layout=\"@layout/").append(include).append("\" />\n");
+        }
+        xml.append("</LinearLayout>\n");
+        return myFixture.addFileToProject("res/" + directory + "/" + name + ".xml", xml.toString());
+    }
+}
@@ -0,0 +1,55 @@
+package utils;
+
+import object.FieldElement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 生成 JavaBean 字段和 getter/setter 方法的代码文本，只依赖 JDK，
+ * 插件和性能测试共用
+ */
+public class BeanCodeRenderer {
+
+    /**
+     * 解析以 \n 分隔、每行形如 "name String" 的字段定义，空行忽略
+     */
+    public static List<FieldElement> parseFields(String fieldStr) {
+        List<FieldElement> elements = new ArrayList<>();
+        for (String line : fieldStr.split("\n")) {
+            String[] temp = line.trim().split(" ");
+            if (temp.length < 2) {
+                continue;
+            }
+            elements.add(new FieldElement(temp[1], temp[0]));
+        }
+        return elements;
+    }
+
+    /**
+     * 拼接出 public fieldType fieldName;
+     */
+    public static String renderField(String accessController, FieldElement element) {
+        return accessController + " " + element.getFieldType() + " " + element.getFieldName() + ";";
+    }
+
+    public static String renderGetter(String accessController, FieldElement element) {
+        return accessController + " " + element.getFieldType() + " get" + capitalize(element.getFieldName()) + "() {\n"
+                + "return " + element.getFieldName() + ";\n"
+                + "}";
+    }
+
+    public static String renderSetter(String accessController, FieldElement element) {
+        return accessController + " void set" + capitalize(element.getFieldName()) + "("
+                + element.getFieldType() + " " + element.getFieldName() + ") {\n"
+                + "this." + element.getFieldName() + " = " + element.getFieldName() + ";\n"
+                + "}";
+    }
+
+    public static String capitalize(String string) {
+        if (string == null || string.isEmpty()) {
+            throw new NullPointerException("String is null!");
+        }
+        return Character.toUpperCase(string.charAt(0)) + string.substring(1);
+    }
+}
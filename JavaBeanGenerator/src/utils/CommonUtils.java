@@ -1,7 +1,6 @@
 package utils;
 
 import com.intellij.openapi.project.Project;
-import org.apache.http.util.TextUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -38,12 +37,6 @@ public class CommonUtils {
     }
 
     public static String capitalize(String string) {
-        if (TextUtils.isEmpty(string)) {
-            throw new NullPointerException("String is null!");
-        }
-
-        String firstChar = String.valueOf(string.charAt(0)).toUpperCase();
-        String others = string.substring(1);
-        return firstChar + others;
+        return BeanCodeRenderer.capitalize(string);
     }
 }
@@ -0,0 +1,80 @@
+package action;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.psi.JavaDirectoryService;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiDirectory;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.fixtures.LightJavaCodeInsightFixtureTestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 在轻量测试工程中跑完整的 JavaBeanGenerator.generateFile 流程，分别为模板建类和
+ * 加入字段、getter&setter 方法设置时间预算。每次运行生成一个新名字的类
+ */
+public class JavaBeanGeneratorPerformanceTest extends LightJavaCodeInsightFixtureTestCase {
+
+    private static final String PACKAGE_NAME = "com.example.model";
+
+    private PsiDirectory mDirectory;
+    private int mFileIndex;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = myFixture.addFileToProject("com/example/model/package-info.java", "package " + PACKAGE_NAME + ";")
+                .getContainingDirectory();
+    }
+
+    public void testClassTemplate() throws Exception {
+        PlatformTestUtil.startPerformanceTest("class template", 200, () -> {
+            String name = nextFileName();
+            PsiClass psiClass = WriteCommandAction.writeCommandAction(getProject()).compute(() ->
+                    JavaDirectoryService.getInstance().createClass(mDirectory, name, "GenerateFileByString", false,
+                            templateProperties()));
+            assertEquals(name, psiClass.getName());
+        }).attempts(5).assertTiming();
+    }
+
+    public void testSmallBean() throws Exception {
+        runGenerateFile(5, 300);
+    }
+
+    public void testMediumBean() throws Exception {
+        runGenerateFile(50, 1000);
+    }
+
+    public void testLargeBean() throws Exception {
+        runGenerateFile(500, 6000);
+    }
+
+    private void runGenerateFile(int fieldCount, int expectedMs) throws Exception {
+        StringBuilder fieldStr = new StringBuilder();
+        for (int i = 0; i < fieldCount; i++) {
+            fieldStr.append("field").append(i).append(i % 2 == 0 ? " String\n" : " int\n");
+        }
+        JavaBeanGenerator generator = new JavaBeanGenerator();
+
+        PlatformTestUtil.startPerformanceTest("generateFile, " + fieldCount + " fields", expectedMs, () -> {
+            String name = nextFileName();
+            PsiClass psiClass = WriteCommandAction.writeCommandAction(getProject()).compute(() ->
+                    generator.generateFile(getProject(), mDirectory, name, fieldStr.toString(), PACKAGE_NAME));
+            // 模板中自带 serialVersionUID
+            assertEquals(fieldCount + 1, psiClass.getFields().length);
+            assertEquals(fieldCount * 2, psiClass.getMethods().length);
+        }).attempts(3).assertTiming();
+    }
+
+    private static Map<String, String> templateProperties() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("INTERFACES", "implements Serializable");
+        properties.put("PACKAGE_NAME", PACKAGE_NAME);
+        return properties;
+    }
+
+    private String nextFileName() {
+        return "PerfBean" + mFileIndex++;
+    }
+}
@@ -0,0 +1,101 @@
+package benchmark;
+
+import entity.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Element 的构造和三种命名风格下 getFieldName 的开销。通过 BenchmarkRunner 运行时 gc 分析器
+ * 报告的 gc.alloc.rate.norm 即每个元素分配的字节数。legacyConstructAndDefaultName 是改为逐字符
+ * 处理之前的实现，作为 constructAndDefaultName 的对照
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElementBenchmark {
+
+    /**
+     * 原来的 Element 构造方法中截取 id 使用的正则表达式
+     */
+    private static final Pattern LEGACY_ID_PATTERN = Pattern.compile("@\\+?(android:)?id/([^$]+)$", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * 1:aa_bb_cc; 2:aaBbCc; 3:mAaBbCc
+     */
+    @Param({"1", "2", "3"})
+    public int nameStyle;
+
+    private String[] mTypes;
+    private String[] mIds;
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        mTypes = new String[]{"TextView", "android.widget.Button", "androidx.recyclerview.widget.RecyclerView"};
+        mIds = new String[64];
+        for (int i = 0; i < mIds.length; i++) {
+            mIds[i] = "@+id/tv_item_title_" + i;
+        }
+    }
+
+    @Benchmark
+    public Element construct() {
+        int i = mIndex++ & 63;
+        return new Element(mTypes[i % mTypes.length], mIds[i]);
+    }
+
+    @Benchmark
+    public void constructAndName(Blackhole blackhole) {
+        int i = mIndex++ & 63;
+        Element element = new Element(mTypes[i % mTypes.length], mIds[i]);
+        blackhole.consume(element.getFieldName(nameStyle));
+    }
+
+    /**
+     * 插件中实际使用的方式：按设置中的命名风格生成字段名
+     */
+    @Benchmark
+    public String constructAndDefaultName() {
+        int i = mIndex++ & 63;
+        return new Element(mTypes[i % mTypes.length], mIds[i]).getFieldName();
+    }
+
+    /**
+     * 原来的实现：类名按 . 拆分取最后一段，用正则表达式取 id，再按 _ 拆分拼接出 mAaBbCc 形式的字段名
+     */
+    @Benchmark
+    public void legacyConstructAndDefaultName(Blackhole blackhole) {
+        int i = mIndex++ & 63;
+        String[] segments = mTypes[i % mTypes.length].split("\\.");
+        blackhole.consume(segments[segments.length - 1]);
+
+        Matcher matcher = LEGACY_ID_PATTERN.matcher(mIds[i]);
+        if (!matcher.find() || matcher.groupCount() <= 1) {
+            throw new IllegalArgumentException("Invalid format of view id.");
+        }
+        String[] names = matcher.group(2).split("_");
+        StringBuilder sb = new StringBuilder("m");
+        for (String name : names) {
+            sb.append(name.substring(0, 1).toUpperCase(Locale.CHINA)).append(name.substring(1));
+        }
+        blackhole.consume(sb.toString());
+    }
+}
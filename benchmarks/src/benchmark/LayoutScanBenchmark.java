@@ -0,0 +1,74 @@
+package benchmark;
+
+import entity.Element;
+import entity.LayoutIdEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import util.IncludeResolver;
+import util.LayoutVariants;
+import util.StaxLayoutScanner;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 从合成布局中提取 id：流式解析根布局、沿 include 链展开、合并为 Element 列表。
+ * 冷缓存每次都重新解析被包含的布局，热缓存复用 IncludeResolver 的结果
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LayoutScanBenchmark {
+
+    @Param({"10", "100", "1000", "5000"})
+    public int views;
+
+    @Param({"0", "4"})
+    public int includeDepth;
+
+    private SyntheticLayouts mLayouts;
+    private IncludeResolver mWarmResolver;
+
+    @Setup
+    public void setUp() {
+        mLayouts = new SyntheticLayouts(views, includeDepth);
+        mWarmResolver = new IncludeResolver();
+        mWarmResolver.expand(SyntheticLayouts.ROOT, mLayouts.getEntries(SyntheticLayouts.ROOT), mLayouts);
+    }
+
+    @Benchmark
+    public List<LayoutIdEntry> scanRoot() throws XMLStreamException {
+        return StaxLayoutScanner.scan(new ByteArrayInputStream(mLayouts.getBytes(SyntheticLayouts.ROOT)));
+    }
+
+    @Benchmark
+    public List<LayoutIdEntry> expandColdCache() throws XMLStreamException {
+        return new IncludeResolver().expand(SyntheticLayouts.ROOT, scanRoot(), mLayouts);
+    }
+
+    @Benchmark
+    public List<LayoutIdEntry> expandWarmCache() throws XMLStreamException {
+        return mWarmResolver.expand(SyntheticLayouts.ROOT, scanRoot(), mLayouts);
+    }
+
+    @Benchmark
+    public List<Element> extractElements() throws XMLStreamException {
+        return LayoutVariants.merge(Collections.singletonList("layout"),
+                Collections.singletonList(expandWarmCache()));
+    }
+}
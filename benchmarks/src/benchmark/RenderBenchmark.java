@@ -0,0 +1,80 @@
+package benchmark;
+
+import entity.Element;
+import object.FieldElement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import util.BindingRenderer;
+import utils.BeanCodeRenderer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ViewFieldMethodCreator 和 JavaBeanGenerator 插入 PSI 之前拼接代码文本的开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int count;
+
+    private List<Element> mElements;
+    private String mFieldStr;
+    private List<FieldElement> mFields;
+
+    @Setup
+    public void setUp() {
+        mElements = new ArrayList<>(count);
+        StringBuilder fieldStr = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            mElements.add(new Element("TextView", "@+id/tv_item_title_" + i));
+            fieldStr.append("field").append(i).append(i % 2 == 0 ? " String\n" : " int\n");
+        }
+        mFieldStr = fieldStr.toString();
+        mFields = BeanCodeRenderer.parseFields(mFieldStr);
+    }
+
+    @Benchmark
+    public void bindingFieldsAndClicks(Blackhole blackhole) {
+        for (Element element : mElements) {
+            blackhole.consume(BindingRenderer.renderField(element));
+            blackhole.consume(BindingRenderer.renderClickMethod(element, BindingRenderer.getClickMethodName(element) + "Click"));
+        }
+    }
+
+    @Benchmark
+    public String bindingMergedClick() {
+        return BindingRenderer.renderMergedClickMethod(mElements, "onViewClicked");
+    }
+
+    @Benchmark
+    public List<FieldElement> beanParseFields() {
+        return BeanCodeRenderer.parseFields(mFieldStr);
+    }
+
+    @Benchmark
+    public void beanMembers(Blackhole blackhole) {
+        for (FieldElement field : mFields) {
+            blackhole.consume(BeanCodeRenderer.renderField("public", field));
+            blackhole.consume(BeanCodeRenderer.renderGetter("public", field));
+            blackhole.consume(BeanCodeRenderer.renderSetter("public", field));
+        }
+    }
+}
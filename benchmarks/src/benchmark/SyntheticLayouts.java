@@ -0,0 +1,92 @@
+package benchmark;
+
+import entity.LayoutIdEntry;
+import util.IncludeResolver;
+import util.StaxLayoutScanner;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 生成基准测试用的 Android 布局：根布局 root 通过一条 include 链依次包含
+ * include_1 … include_N，全部 views 个控件平均分布在链上的各个布局中，
+ * 控件类型混合了简单类名和全类名
+ */
+class SyntheticLayouts implements IncludeResolver.LayoutSource {
+
+    static final String ROOT = "root";
+
+    private static final String[] TYPES = {
+            "TextView", "ImageView", "Button", "android.widget.EditText",
+            "androidx.recyclerview.widget.RecyclerView", "androidx.constraintlayout.widget.ConstraintLayout"
+    };
+
+    private final Map<String, byte[]> mLayouts = new HashMap<>();
+
+    SyntheticLayouts(int views, int includeDepth) {
+        int layoutCount = includeDepth + 1;
+        int perLayout = views / layoutCount;
+        int index = 0;
+        for (int depth = 0; depth < layoutCount; depth++) {
+            int count = depth == layoutCount - 1 ? views - index : perLayout;
+            String include = depth < includeDepth ? layoutName(depth + 1) : null;
+            mLayouts.put(layoutName(depth), render(index, count, include));
+            index += count;
+        }
+    }
+
+    static String layoutName(int depth) {
+        return depth == 0 ? ROOT : "include_" + depth;
+    }
+
+    byte[] getBytes(String layoutName) {
+        return mLayouts.get(layoutName);
+    }
+
+    @Override
+    public List<LayoutIdEntry> getEntries(String layoutName) {
+        byte[] bytes = mLayouts.get(layoutName);
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            return StaxLayoutScanner.scan(new ByteArrayInputStream(bytes));
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public long getModificationStamp(String layoutName) {
+        return mLayouts.containsKey(layoutName) ? 0 : -1;
+    }
+
+    @Override
+    public Object getScopeKey() {
+        return this;
+    }
+
+    private static byte[] render(int firstIndex, int count, String include) {
+        StringBuilder xml = new StringBuilder(count * 160);
+        xml.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n")
+                .append("<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n")
+                .append("    android:layout_width=\"match_parent\"\n")
+                .append("    android:layout_height=\"match_parent\"\n")
+                .append("    android:orientation=\"vertical\">\n");
+        for (int i = firstIndex; i < firstIndex + count; i++) {
+            xml.append("    <").append(TYPES[i % TYPES.length]).append('\n')
+                    .append("        android:id=\"@+id/view_item_").append(i).append("_title\"\n")
+                    .append("        android:layout_width=\"wrap_content\"\n")
+                    .append("        android:layout_height=\"wrap_content\" />\n");
+        }
+        if (include != null) {
+            xml.append("    <include layout=\"@layout/").append(include).append("\" />\n");
+        }
+        xml.append("</LinearLayout>\n");
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,178 @@
+package latency;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 记录插件各个阶段的耗时。每个阶段保留最近 CAPACITY 次的样本（环形缓冲区），
+ * 可以计算分位数并导出为 JSON。只依赖 JDK，不同线程上的阶段直接记录到同一个实例中。
+ * 两个插件共用这份源码，各自的类加载器中有各自的实例
+ */
+public class LatencyRecorder {
+
+    public static final int CAPACITY = 200;
+
+    private static final LatencyRecorder INSTANCE = new LatencyRecorder(CAPACITY);
+
+    /**
+     * 某个阶段最近若干次的耗时，单位纳秒
+     */
+    private static class Samples {
+        final long[] values;
+        int next;
+        int size;
+
+        Samples(int capacity) {
+            values = new long[capacity];
+        }
+
+        void add(long value) {
+            values[next] = value;
+            next = (next + 1) % values.length;
+            size = Math.min(size + 1, values.length);
+        }
+
+        /**
+         * 按记录的先后顺序返回所有样本
+         */
+        long[] toArray() {
+            long[] result = new long[size];
+            int start = size < values.length ? 0 : next;
+            for (int i = 0; i < size; i++) {
+                result[i] = values[(start + i) % values.length];
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 某个阶段的统计结果，时间单位都是纳秒
+     */
+    public static class PhaseStats {
+        private final String phase;
+        private final long[] samples;
+        private final long[] sorted;
+
+        PhaseStats(String phase, long[] samples) {
+            this.phase = phase;
+            this.samples = samples;
+            this.sorted = samples.clone();
+            Arrays.sort(sorted);
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public int getCount() {
+            return samples.length;
+        }
+
+        /**
+         * 按记录的先后顺序返回所有样本
+         */
+        public long[] getSamples() {
+            return samples.clone();
+        }
+
+        /**
+         * 最近邻取整法计算的分位数，percentile 取值 0~100
+         */
+        public long getPercentile(double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+            return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+        }
+
+        public long getMax() {
+            return sorted.length == 0 ? 0 : sorted[sorted.length - 1];
+        }
+    }
+
+    private final int mCapacity;
+    private final Map<String, Samples> mPhases = new LinkedHashMap<>();
+
+    public LatencyRecorder(int capacity) {
+        mCapacity = capacity;
+    }
+
+    public static LatencyRecorder getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 记录从 startNanos（System.nanoTime() 的返回值）到现在的耗时
+     */
+    public void record(String phase, long startNanos) {
+        add(phase, System.nanoTime() - startNanos);
+    }
+
+    public synchronized void add(String phase, long nanos) {
+        Samples samples = mPhases.get(phase);
+        if (samples == null) {
+            samples = new Samples(mCapacity);
+            mPhases.put(phase, samples);
+        }
+        samples.add(nanos);
+    }
+
+    /**
+     * 按阶段第一次出现的顺序返回当前的统计结果
+     */
+    public synchronized List<PhaseStats> snapshot() {
+        List<PhaseStats> stats = new ArrayList<>(mPhases.size());
+        for (Map.Entry<String, Samples> entry : mPhases.entrySet()) {
+            stats.add(new PhaseStats(entry.getKey(), entry.getValue().toArray()));
+        }
+        return stats;
+    }
+
+    public synchronized void clear() {
+        mPhases.clear();
+    }
+
+    /**
+     * 导出为 JSON，每个阶段包含样本数、分位数（毫秒）和所有样本（毫秒）
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\n  \"capacity\": ").append(mCapacity).append(",\n  \"phases\": [");
+        List<PhaseStats> stats = snapshot();
+        for (int i = 0; i < stats.size(); i++) {
+            PhaseStats phase = stats.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"phase\": \"").append(escape(phase.getPhase())).append('"')
+                    .append(", \"count\": ").append(phase.getCount())
+                    .append(", \"p50\": ").append(toMillis(phase.getPercentile(50)))
+                    .append(", \"p90\": ").append(toMillis(phase.getPercentile(90)))
+                    .append(", \"p99\": ").append(toMillis(phase.getPercentile(99)))
+                    .append(", \"max\": ").append(toMillis(phase.getMax()))
+                    .append(", \"samples\": [");
+            long[] samples = phase.getSamples();
+            for (int j = 0; j < samples.length; j++) {
+                if (j > 0) {
+                    json.append(", ");
+                }
+                json.append(toMillis(samples[j]));
+            }
+            json.append("]}");
+        }
+        return json.append(stats.isEmpty() ? "]\n}\n" : "\n  ]\n}\n").toString();
+    }
+
+    /**
+     * 纳秒转换为保留三位小数的毫秒字符串
+     */
+    public static String toMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
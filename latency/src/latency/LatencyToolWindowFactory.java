@@ -0,0 +1,99 @@
+package latency;
+
+import com.intellij.openapi.fileChooser.FileChooserFactory;
+import com.intellij.openapi.fileChooser.FileSaverDescriptor;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.vfs.VirtualFileWrapper;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.openapi.wm.ToolWindowFactory;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.content.Content;
+import com.intellij.ui.content.ContentFactory;
+import com.intellij.ui.table.JBTable;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+
+/**
+ * 显示 LatencyRecorder 中各阶段最近若干次耗时的分位数，可以刷新、清空和导出为 JSON。
+ * 导出的文件名由工具窗口的 id 得到，如 "ButterKnife Latency" 导出为 butterknife-latency.json
+ */
+public class LatencyToolWindowFactory implements ToolWindowFactory, DumbAware {
+
+    private static final String[] COLUMN_NAMES = {"阶段", "次数", "P50 (ms)", "P90 (ms)", "P99 (ms)", "最大 (ms)"};
+
+    @Override
+    public void createToolWindowContent(@NotNull Project project, @NotNull ToolWindow toolWindow) {
+        DefaultTableModel model = new DefaultTableModel(COLUMN_NAMES, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JBTable table = new JBTable(model);
+
+        JButton refresh = new JButton("刷新");
+        refresh.addActionListener(e -> refresh(model));
+        JButton clear = new JButton("清空");
+        clear.addActionListener(e -> {
+            LatencyRecorder.getInstance().clear();
+            refresh(model);
+        });
+        JButton export = new JButton("导出 JSON");
+        String fileName = getExportFileName(toolWindow.getId());
+        export.addActionListener(e -> exportJson(project, fileName));
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        buttons.add(refresh);
+        buttons.add(clear);
+        buttons.add(export);
+
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(buttons, BorderLayout.NORTH);
+        panel.add(new JBScrollPane(table), BorderLayout.CENTER);
+        refresh(model);
+
+        Content content = ContentFactory.SERVICE.getInstance().createContent(panel, "", false);
+        toolWindow.getContentManager().addContent(content);
+    }
+
+    private static void refresh(DefaultTableModel model) {
+        model.setRowCount(0);
+        for (LatencyRecorder.PhaseStats stats : LatencyRecorder.getInstance().snapshot()) {
+            model.addRow(new Object[]{
+                    stats.getPhase(),
+                    stats.getCount(),
+                    LatencyRecorder.toMillis(stats.getPercentile(50)),
+                    LatencyRecorder.toMillis(stats.getPercentile(90)),
+                    LatencyRecorder.toMillis(stats.getPercentile(99)),
+                    LatencyRecorder.toMillis(stats.getMax())
+            });
+        }
+    }
+
+    static String getExportFileName(String toolWindowId) {
+        return toolWindowId.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", "-") + ".json";
+    }
+
+    private static void exportJson(Project project, String fileName) {
+        FileSaverDescriptor descriptor = new FileSaverDescriptor("导出耗时统计", "保存各阶段耗时的 JSON 文件", "json");
+        VirtualFileWrapper wrapper = FileChooserFactory.getInstance().createSaveFileDialog(descriptor, project)
+                .save(null, fileName);
+        if (wrapper == null) {
+            return;
+        }
+        try {
+            Files.write(wrapper.getFile().toPath(), LatencyRecorder.getInstance().toJson().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Messages.showErrorDialog(project, e.getMessage(), "导出失败");
+        }
+    }
+}